@@ -0,0 +1,172 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// bench.Rentals over the real application classes; see that interface.
+public class BenchRentals implements bench.Rentals {
+    private static final int FIRST_DAY = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+
+    private RentalSystem system;
+    private String[] plates;
+    private Vehicle[] vehicles;
+    private Customer[] customers;
+    private RentalHistory history;
+    private int historyDays;
+
+    @Override
+    public void generate(Path dir, int fleetSize, int historySize) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("vehicles.txt"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < fleetSize; i++) out.append(vehicleLine(i)).append('\n');
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("customers.txt"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < bench.Rentals.customerCount(fleetSize); i++)
+                out.append(Integer.toString(i)).append(",Customer ").append(Integer.toString(i)).append('\n');
+        }
+
+        RentalConfig config = config(dir);
+        RecordFormat format = config.getRecordFormat();
+        try (SegmentedRecordLog log = new SegmentedRecordLog(config.resolve(format.getDirectory()), format, config)) {
+            log.open();
+            log.importLines(() -> recordLines(fleetSize, historySize));
+        }
+    }
+
+    @Override
+    public void start(Path dir) {
+        System.setProperty("rental.dataDir", dir.toString());
+        try {
+            Constructor<RentalSystem> constructor = RentalSystem.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            system = constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (system == null) return;
+        system.close();
+        system = null;
+    }
+
+    @Override
+    public void prepare() {
+        int fleetSize = system.countVehicles(Vehicle.VehicleStatus.Available)
+                + system.countVehicles(Vehicle.VehicleStatus.Rented);
+        plates = new String[fleetSize];
+        vehicles = new Vehicle[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            plates[i] = Vehicle.unpackPlate(i);
+            vehicles[i] = system.findVehicleByPlate(plates[i]);
+        }
+        customers = new Customer[bench.Rentals.customerCount(fleetSize)];
+        for (int i = 0; i < customers.length; i++) customers[i] = system.findCustomerById(i);
+    }
+
+    @Override
+    public boolean rentAndReturn(int vehicle, int customer) {
+        LocalDate today = LocalDate.now();
+        Vehicle v = vehicles[vehicle];
+        Customer c = customers[customer];
+        return system.rentVehicle(v, c, today, 100) && system.returnVehicle(v, c, today, 0);
+    }
+
+    @Override
+    public Object findVehicleByPlate(int vehicle) {
+        return system.findVehicleByPlate(plates[vehicle]);
+    }
+
+    @Override
+    public void buildHistory(int fleetSize, int historySize) {
+        plates = new String[fleetSize];
+        vehicles = new Vehicle[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            vehicles[i] = new Car("Toyota", "Corolla", 2020, 5);
+            vehicles[i].setLicensePlate(Vehicle.unpackPlate(i));
+            plates[i] = vehicles[i].getLicensePlate();
+        }
+        customers = new Customer[bench.Rentals.customerCount(fleetSize)];
+        for (int i = 0; i < customers.length; i++) customers[i] = new Customer(i, "Customer " + i);
+
+        history = new RentalHistory();
+        for (int i = 0; i < historySize; i++) {
+            int pair = i / 2;
+            history.add(vehicles[pair % fleetSize], customers[pair % customers.length], day(pair, fleetSize),
+                    i % 2 == 0 ? 10_000 : 0, i % 2 == 0 ? RecordType.RENT : RecordType.RETURN);
+        }
+        historyDays = day(Math.max(0, historySize - 1) / 2, fleetSize) - FIRST_DAY + 1;
+    }
+
+    @Override
+    public int recordsByVehicle(int vehicle) {
+        return history.getRentalRecordsByVehicle(plates[vehicle]).size();
+    }
+
+    @Override
+    public int recordsByCustomer(int customer) {
+        return history.getRentalRecordsByCustomer(customers[customer].getCustomerId()).size();
+    }
+
+    @Override
+    public int recordsBetween(int firstDay, int days) {
+        LocalDate from = LocalDate.ofEpochDay(FIRST_DAY + firstDay);
+        return history.getRentalRecordsBetween(from, from.plusDays(days - 1)).size();
+    }
+
+    @Override
+    public int historyDays() {
+        return historyDays;
+    }
+
+    // Each vehicle is rented once a day, in turn.
+    private static int day(int pair, int fleetSize) {
+        return FIRST_DAY + pair / fleetSize;
+    }
+
+    private static String vehicleLine(int i) {
+        String plate = Vehicle.unpackPlate(i);
+        switch (i % 3) {
+            case 0:  return "Car," + plate + ",Toyota,Corolla," + (2000 + i % 25) + "," + (2 + i % 6);
+            case 1:  return "Minibus," + plate + ",Ford,Transit," + (2000 + i % 25) + "," + (i % 2 == 0);
+            default: return "PickupTruck," + plate + ",Ford,Ranger," + (2000 + i % 25) + "," + (100 + i % 900) + ".0,"
+                    + (i % 2 == 0);
+        }
+    }
+
+    private static Iterator<String> recordLines(int fleetSize, int historySize) {
+        int customerCount = bench.Rentals.customerCount(fleetSize);
+        return new Iterator<String>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < historySize;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int pair = i / 2;
+                String line = (i % 2 == 0 ? "RENT," : "RETURN,") + Vehicle.unpackPlate(pair % fleetSize) + ","
+                        + pair % customerCount + "," + LocalDate.ofEpochDay(day(pair, fleetSize)) + ","
+                        + (i % 2 == 0 ? "100.0" : "0.0");
+                i++;
+                return line;
+            }
+        };
+    }
+
+    private static RentalConfig config(Path dir) {
+        RentalConfig config = RentalConfig.fromSystemProperties();
+        config.setDataDir(dir);
+        config.setDurability(WriteAheadLog.Durability.FSYNC_INTERVAL);
+        return config;
+    }
+}
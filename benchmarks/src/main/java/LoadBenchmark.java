@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.Scanner;
+
+// Load throughput of the data file parsers, in MB/s.
+//
+// Usage: java LoadBenchmark [rows] [rounds]
+//
+// Writes synthetic vehicles.txt, customers.txt and rental record files to a
+// temp directory, then times parsing every row of each: "before" is the
+// original app's loaders (Scanner.nextLine, String.trim, String.split,
+// Integer/Double.parseXxx, LocalDate.parse and the regex plate check of
+// setLicensePlate), "after" is CsvReader. Objects are not built, so the
+// numbers are tokenizing and field parsing only. Reports the best of the timed
+// rounds after as many warm-up rounds.
+public class LoadBenchmark {
+
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path dir = Files.createTempDirectory("load-benchmark");
+        Path vehicles = dir.resolve("vehicles.txt");
+        Path customers = dir.resolve("customers.txt");
+        Path records = dir.resolve("records.log");
+        try {
+            generate(vehicles, customers, records, rows);
+
+            System.out.printf("%-10s %10s %12s %12s %8s%n", "file", "MB", "before MB/s", "after MB/s", "speedup");
+            run("vehicles", vehicles, rounds, LoadBenchmark::splitVehicles, LoadBenchmark::readVehicles);
+            run("customers", customers, rounds, LoadBenchmark::splitCustomers, LoadBenchmark::readCustomers);
+            run("records", records, rounds, LoadBenchmark::splitRecords, LoadBenchmark::readRecords);
+        } finally {
+            Files.deleteIfExists(vehicles);
+            Files.deleteIfExists(customers);
+            Files.deleteIfExists(records);
+            Files.deleteIfExists(dir);
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    private interface Parser {
+        long parse(Path path) throws IOException;
+    }
+
+    private static void run(String name, Path path, int rounds, Parser before, Parser after) throws IOException {
+        double mb = Files.size(path) / (1024.0 * 1024.0);
+        double beforeRate = mb / bestSeconds(path, rounds, before);
+        double afterRate = mb / bestSeconds(path, rounds, after);
+        System.out.printf("%-10s %10.1f %12.1f %12.1f %7.1fx%n", name, mb, beforeRate, afterRate, afterRate / beforeRate);
+    }
+
+    private static double bestSeconds(Path path, int rounds, Parser parser) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds * 2; i++) {
+            long start = System.nanoTime();
+            sink += parser.parse(path);
+            long elapsed = System.nanoTime() - start;
+            if (i >= rounds) best = Math.min(best, elapsed);
+        }
+        return best / 1e9;
+    }
+
+    // BEFORE
+
+    private static long splitVehicles(Path path) throws IOException {
+        long[] sum = new long[1];
+        forEachLine(path, line -> {
+            String[] parts = line.split(",");
+            if (!parts[1].matches("^[A-Z]{3}[0-9]{3}$")) throw new IllegalArgumentException(parts[1]);
+            sum[0] += parts[2].length() + parts[3].length() + Integer.parseInt(parts[4]);
+            if ("Car".equalsIgnoreCase(parts[0])) sum[0] += Integer.parseInt(parts[5]);
+            else if ("Minibus".equalsIgnoreCase(parts[0])) sum[0] += Boolean.parseBoolean(parts[5]) ? 1 : 0;
+            else sum[0] += (long) Double.parseDouble(parts[5]) + (Boolean.parseBoolean(parts[6]) ? 1 : 0);
+        });
+        return sum[0];
+    }
+
+    private static long splitCustomers(Path path) throws IOException {
+        long[] sum = new long[1];
+        forEachLine(path, line -> {
+            String[] parts = line.split(",", 2);
+            sum[0] += Integer.parseInt(parts[0]) + parts[1].length();
+        });
+        return sum[0];
+    }
+
+    private static long splitRecords(Path path) throws IOException {
+        long[] sum = new long[1];
+        forEachLine(path, line -> {
+            String[] parts = line.split(",");
+            sum[0] += parts[0].length() + parts[1].length() + Integer.parseInt(parts[2])
+                    + LocalDate.parse(parts[3]).toEpochDay() + (long) Double.parseDouble(parts[4]);
+        });
+        return sum[0];
+    }
+
+    private interface LineAction {
+        void accept(String line);
+    }
+
+    // The loop of the original loadVehicles, loadCustomers and loadRentalRecords.
+    private static void forEachLine(Path path, LineAction action) throws IOException {
+        try (Scanner scanner = new Scanner(path.toFile(), "UTF-8")) {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (!line.isEmpty()) action.accept(line);
+            }
+        }
+    }
+
+    // AFTER
+
+    private static long readVehicles(Path path) throws IOException {
+        long sum = 0;
+        try (CsvReader in = CsvReader.open(path, 0, Long.MAX_VALUE)) {
+            while (in.next()) {
+                if (in.plateField(1) < 0) throw new IllegalArgumentException(in.string(1));
+                sum += in.string(2).length() + in.string(3).length() + in.intField(4);
+                if (in.equalsIgnoreCase(0, "Car")) sum += in.intField(5);
+                else if (in.equalsIgnoreCase(0, "Minibus")) sum += in.booleanField(5) ? 1 : 0;
+                else sum += (long) in.doubleField(5) + (in.booleanField(6) ? 1 : 0);
+            }
+        }
+        return sum;
+    }
+
+    private static long readCustomers(Path path) throws IOException {
+        long sum = 0;
+        try (CsvReader in = CsvReader.open(path, 0, Long.MAX_VALUE)) {
+            while (in.next()) sum += in.intField(0) + in.rest(1).length();
+        }
+        return sum;
+    }
+
+    private static long readRecords(Path path) throws IOException {
+        RecordType[] types = RecordType.values();
+        long sum = 0;
+        try (CsvReader in = CsvReader.open(path, 0, Long.MAX_VALUE)) {
+            while (in.next()) {
+                sum += in.enumField(0, types).ordinal() + in.plateField(1) + in.intField(2)
+                        + in.epochDayField(3) + RecordFormat.toCents(in.doubleField(4));
+            }
+        }
+        return sum;
+    }
+
+    private static void generate(Path vehicles, Path customers, Path records, int rows) throws IOException {
+        Random random = new Random(1);
+        String[] makes = {"Toyota", "Honda", "Ford", "Volkswagen", "Kia", "Tesla"};
+        String[] models = {"Corolla", "Civic", "Transit", "Golf", "Rio", "Model3"};
+        String[] names = {"George", "Anne", "Priya", "Mohammed", "Li Wei", "Sofia"};
+
+        StringBuilder v = new StringBuilder();
+        StringBuilder c = new StringBuilder();
+        StringBuilder r = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            String plate = Vehicle.unpackPlate(random.nextInt(26 * 26 * 26 * 1000));
+            String make = makes[random.nextInt(makes.length)];
+            String model = models[random.nextInt(models.length)];
+            int year = 1995 + random.nextInt(30);
+            switch (i % 3) {
+                case 0:  v.append("Car,").append(plate).append(',').append(make).append(',').append(model)
+                          .append(',').append(year).append(',').append(2 + random.nextInt(6)); break;
+                case 1:  v.append("Minibus,").append(plate).append(',').append(make).append(',').append(model)
+                          .append(',').append(year).append(',').append(random.nextBoolean()); break;
+                default: v.append("PickupTruck,").append(plate).append(',').append(make).append(',').append(model)
+                          .append(',').append(year).append(',').append(100 + random.nextInt(900)).append(".0,")
+                          .append(random.nextBoolean());
+            }
+            v.append('\n');
+
+            c.append(i).append(',').append(names[random.nextInt(names.length)]).append(' ').append(i).append('\n');
+
+            r.append(random.nextBoolean() ? "RENT," : "RETURN,").append(plate).append(',').append(random.nextInt(rows))
+             .append(',').append(LocalDate.ofEpochDay(18000 + random.nextInt(3000))).append(',')
+             .append(random.nextInt(500)).append('.').append(random.nextInt(10)).append('\n');
+        }
+        Files.write(vehicles, v.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(customers, c.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(records, r.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
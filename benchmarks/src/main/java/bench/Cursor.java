@@ -0,0 +1,19 @@
+package bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Per-thread pseudo-random indexes (xorshift), cheap enough not to show in the results.
+@State(Scope.Thread)
+public class Cursor {
+    private int x = ThreadLocalRandom.current().nextInt() | 1;
+
+    public int next(int bound) {
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        return (x & Integer.MAX_VALUE) % bound;
+    }
+}
@@ -0,0 +1,46 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// A temporary data directory with generated files, deleted after the trial.
+final class DataDir {
+
+    private DataDir() {
+    }
+
+    // Logs are synced in the background and never snapshotted unless the run
+    // says otherwise (-jvmArgs -Drental.durability=FSYNC_EACH and so on).
+    static Path create(Rentals rentals, int fleetSize, int historySize) throws IOException {
+        setDefault("rental.durability", "FSYNC_INTERVAL");
+        setDefault("rental.snapshotEvery", "0");
+        Path dir = Files.createTempDirectory("rental-bench");
+        rentals.generate(dir, fleetSize, historySize);
+        return dir;
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) System.setProperty(property, value);
+    }
+}
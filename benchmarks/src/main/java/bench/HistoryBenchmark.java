@@ -0,0 +1,79 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// RentalHistory queries on an in-memory history of historySize records, each
+// vehicle rented and returned once a day in turn. Results are materialized
+// record lists, so the allocation rate tracks the result size.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int fleetSize;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int historySize;
+
+    private Rentals rentals;
+    private int customerCount;
+    private int days;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rentals = Rentals.create();
+        rentals.buildHistory(fleetSize, historySize);
+        customerCount = Rentals.customerCount(fleetSize);
+        days = rentals.historyDays();
+    }
+
+    @Benchmark
+    public int byVehicle(Cursor cursor) {
+        return rentals.recordsByVehicle(cursor.next(fleetSize));
+    }
+
+    @Benchmark
+    public int byCustomer(Cursor cursor) {
+        return rentals.recordsByCustomer(cursor.next(customerCount));
+    }
+
+    @Benchmark
+    public int betweenOneDay(Cursor cursor) {
+        return rentals.recordsBetween(cursor.next(days), 1);
+    }
+
+    @Benchmark
+    public int betweenThirtyDays(Cursor cursor) {
+        return rentals.recordsBetween(cursor.next(days), 30);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int byVehicleShared(Cursor cursor) {
+        return rentals.recordsByVehicle(cursor.next(fleetSize));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int betweenThirtyDaysShared(Cursor cursor) {
+        return rentals.recordsBetween(cursor.next(days), 30);
+    }
+}
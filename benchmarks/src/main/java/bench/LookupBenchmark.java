@@ -0,0 +1,61 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// findVehicleByPlate over random plates of the fleet, alone and with 8 threads.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int fleetSize;
+
+    private Rentals rentals;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rentals = Rentals.create();
+        dir = DataDir.create(rentals, fleetSize, 0);
+        rentals.start(dir);
+        rentals.prepare();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rentals.stop();
+        DataDir.delete(dir);
+    }
+
+    @Benchmark
+    public Object findVehicleByPlate(Cursor cursor) {
+        return rentals.findVehicleByPlate(cursor.next(fleetSize));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object findVehicleByPlateShared(Cursor cursor) {
+        return rentals.findVehicleByPlate(cursor.next(fleetSize));
+    }
+}
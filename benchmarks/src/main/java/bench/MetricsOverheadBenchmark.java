@@ -0,0 +1,72 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The hot paths with latency timers on and off (-Drental.metrics). The
+// difference is what the instrumentation costs; RentalMetrics documents the
+// budget it has to stay under.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+    private static final int FLEET_SIZE = 100_000;
+
+    @Param({"true", "false"})
+    public String metrics;
+
+    private Rentals rentals;
+    private int customerCount;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty("rental.metrics", metrics);
+        rentals = Rentals.create();
+        customerCount = Rentals.customerCount(FLEET_SIZE);
+        dir = DataDir.create(rentals, FLEET_SIZE, 0);
+        rentals.start(dir);
+        rentals.prepare();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rentals.stop();
+        DataDir.delete(dir);
+    }
+
+    @Benchmark
+    public Object findVehicleByPlate(Cursor cursor) {
+        return rentals.findVehicleByPlate(cursor.next(FLEET_SIZE));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object findVehicleByPlateShared(Cursor cursor) {
+        return rentals.findVehicleByPlate(cursor.next(FLEET_SIZE));
+    }
+
+    @Benchmark
+    public boolean rentAndReturn(Cursor cursor) {
+        return rentals.rentAndReturn(cursor.next(FLEET_SIZE), cursor.next(customerCount));
+    }
+}
@@ -0,0 +1,79 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// rentVehicle followed by returnVehicle, both logged, on a system started from
+// fleetSize vehicles and historySize past records.
+//
+// The 8-thread variants differ in contention: "hot" threads all pick from
+// the same 8 vehicles, so most rents find the vehicle already rented and fail
+// fast; "spread" threads pick from the whole fleet and rarely collide, which
+// leaves the shared log and indexes as the contended parts.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class RentReturnBenchmark {
+    private static final int HOT_VEHICLES = 8;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int fleetSize;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int historySize;
+
+    private Rentals rentals;
+    private int customerCount;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rentals = Rentals.create();
+        customerCount = Rentals.customerCount(fleetSize);
+        dir = DataDir.create(rentals, fleetSize, historySize);
+        rentals.start(dir);
+        rentals.prepare();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rentals.stop();
+        DataDir.delete(dir);
+    }
+
+    @Benchmark
+    public boolean rentAndReturn(Cursor cursor) {
+        return rentals.rentAndReturn(cursor.next(fleetSize), cursor.next(customerCount));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean rentAndReturnHot(Cursor cursor) {
+        return rentals.rentAndReturn(cursor.next(Math.min(HOT_VEHICLES, fleetSize)), cursor.next(customerCount));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean rentAndReturnSpread(Cursor cursor) {
+        return rentals.rentAndReturn(cursor.next(fleetSize), cursor.next(customerCount));
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// What the benchmarks drive. The application lives in the default package,
+// which code in a named package cannot refer to, and JMH only accepts
+// benchmarks in a named package; BenchRentals (default package) implements
+// this interface and is loaded by name. Vehicles and customers are addressed
+// by index, 0 until fleetSize / customerCount.
+public interface Rentals {
+
+    static Rentals create() {
+        try {
+            return (Rentals) Class.forName("BenchRentals").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchRentals is missing from the classpath", e);
+        }
+    }
+
+    static int customerCount(int fleetSize) {
+        return Math.max(100, fleetSize / 10);
+    }
+
+    // Writes vehicles.txt, customers.txt and a rental log of historySize
+    // records (RENT/RETURN pairs, so every vehicle ends up available) into dir.
+    void generate(Path dir, int fleetSize, int historySize) throws IOException;
+
+    // Starts a new RentalSystem on dir; it runs every load step.
+    void start(Path dir);
+
+    // Closes the started system: stops its threads and closes its data files.
+    void stop();
+
+    // Looks up the started system's vehicles and customers by index, ready
+    // for rentAndReturn and findVehicleByPlate.
+    void prepare();
+
+    // Rents the vehicle and, if that succeeded, returns it: two logged records.
+    boolean rentAndReturn(int vehicle, int customer);
+
+    Object findVehicleByPlate(int vehicle);
+
+    // Fills an in-memory RentalHistory with historySize records over the fleet.
+    void buildHistory(int fleetSize, int historySize);
+
+    int recordsByVehicle(int vehicle);
+
+    int recordsByCustomer(int customer);
+
+    // Records dated in [firstDay, firstDay + days), days counted from the first history record.
+    int recordsBetween(int firstDay, int days);
+
+    // Days from the first to the last history record.
+    int historyDays();
+}
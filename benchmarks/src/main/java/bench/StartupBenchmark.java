@@ -0,0 +1,64 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Time to start a RentalSystem: loadVehicles, loadCustomers, replaying the
+// rental log into the history, and loadReservations. Each invocation is a
+// cold start on the same files. Startup is single-threaded by nature (the
+// log replay parallelizes internally), so there is no threaded variant.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int fleetSize;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int historySize;
+
+    private Rentals rentals;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rentals = Rentals.create();
+        dir = DataDir.create(rentals, fleetSize, historySize);
+    }
+
+    // Each start opens the data files and starts the journal threads anew.
+    @TearDown(Level.Invocation)
+    public void stop() {
+        rentals.stop();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DataDir.delete(dir);
+    }
+
+    @Benchmark
+    public Rentals start() {
+        rentals.start(dir);
+        return rentals;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Growable bit set whose bits are set and cleared with CAS, so threads
+// updating different bits never lock. Words live in fixed pages that are
+// only ever added, so an update is never lost to a resize. Reads of a range
+// are not atomic as a whole: a bit that changes during the read may show
+// either value.
+public class AtomicBitSet {
+    private static final int PAGE_WORDS = 1024;
+    private static final int PAGE_BITS = PAGE_WORDS * 64;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    public void set(int bit) {
+        AtomicLongArray page = page(bit / PAGE_BITS, true);
+        int word = (bit % PAGE_BITS) >>> 6;
+        long mask = 1L << bit;
+        long old;
+        do {
+            old = page.get(word);
+            if ((old & mask) != 0) return;
+        } while (!page.compareAndSet(word, old, old | mask));
+    }
+
+    public void clear(int bit) {
+        AtomicLongArray page = page(bit / PAGE_BITS, false);
+        if (page == null) return;
+        int word = (bit % PAGE_BITS) >>> 6;
+        long mask = 1L << bit;
+        long old;
+        do {
+            old = page.get(word);
+            if ((old & mask) == 0) return;
+        } while (!page.compareAndSet(word, old, old & ~mask));
+    }
+
+    public boolean get(int bit) {
+        AtomicLongArray page = page(bit / PAGE_BITS, false);
+        return page != null && (page.get((bit % PAGE_BITS) >>> 6) & 1L << bit) != 0;
+    }
+
+    // Bits [from, to) as a BitSet, shifted down so that bit from is bit 0.
+    public BitSet get(int from, int to) {
+        if (to <= from) return new BitSet();
+        long[] words = new long[((to - from) + 63) >>> 6];
+        int shift = from & 63;
+        int first = from >>> 6;
+        for (int i = 0; i < words.length; i++) {
+            long w = word(first + i) >>> shift;
+            if (shift != 0) w |= word(first + i + 1) << (64 - shift);
+            words[i] = w;
+        }
+        int tail = (to - from) & 63;
+        if (tail != 0) words[words.length - 1] &= (1L << tail) - 1;
+        return BitSet.valueOf(words);
+    }
+
+    private long word(int index) {
+        AtomicLongArray[] current = pages;
+        int page = index / PAGE_WORDS;
+        return page < current.length ? current[page].get(index % PAGE_WORDS) : 0;
+    }
+
+    private AtomicLongArray page(int index, boolean create) {
+        AtomicLongArray[] current = pages;
+        if (index < current.length) return current[index];
+        if (!create) return null;
+        synchronized (this) {
+            current = pages;
+            if (index >= current.length) {
+                AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+                for (int i = current.length; i < grown.length; i++) grown[i] = new AtomicLongArray(PAGE_WORDS);
+                pages = grown;
+                current = grown;
+            }
+            return current[index];
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fleet partitioned by status, with per-type counts for each status, so
+// listing or counting the vehicles in one status costs O(result).
+//
+// Vehicles report every status change through Vehicle.StatusListener. The
+// index then re-reads the vehicle's current status under that vehicle's
+// placement and moves it there, so notifications that arrive out of order
+// still leave each vehicle in the partition matching its latest status.
+// There is no index-wide lock: partitions are concurrent skip lists keyed by
+// the order vehicles entered them, and counts are atomic, so rents and
+// returns on different vehicles never wait for each other or for a listing.
+// Listings and counts taken while vehicles move are weakly consistent.
+public class AvailabilityIndex implements Vehicle.StatusListener {
+    private final Map<Vehicle.VehicleStatus, ConcurrentSkipListMap<Long, Vehicle>> byStatus =
+            new EnumMap<>(Vehicle.VehicleStatus.class);
+    private final Map<Vehicle.VehicleStatus, AtomicInteger> counts = new EnumMap<>(Vehicle.VehicleStatus.class);
+    private final Map<Vehicle.VehicleStatus, ConcurrentHashMap<String, AtomicInteger>> typeCounts =
+            new EnumMap<>(Vehicle.VehicleStatus.class);
+    private final ConcurrentIntObjectMap<Placement> placed = new ConcurrentIntObjectMap<>();
+    private final AtomicLong entries = new AtomicLong();
+
+    public AvailabilityIndex() {
+        for (Vehicle.VehicleStatus status : Vehicle.VehicleStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListMap<>());
+            counts.put(status, new AtomicInteger());
+            typeCounts.put(status, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void add(Vehicle vehicle) {
+        Placement placement = new Placement(vehicle);
+        if (placed.putIfAbsent(vehicle.getPackedPlate(), placement) == null) place(placement);
+    }
+
+    public void remove(Vehicle vehicle) {
+        Placement placement = placed.remove(vehicle.getPackedPlate());
+        if (placement == null) return;
+        synchronized (placement) {
+            placement.removed = true;
+            if (placement.status != null) unplace(placement);
+        }
+    }
+
+    @Override
+    public void statusChanged(Vehicle vehicle) {
+        Placement placement = placed.get(vehicle.getPackedPlate());
+        if (placement != null && placement.vehicle == vehicle) place(placement);
+    }
+
+    // Vehicles currently in the status, in the order they entered it.
+    public List<Vehicle> list(Vehicle.VehicleStatus status) {
+        return new ArrayList<>(byStatus.get(status).values());
+    }
+
+    // Cursor over the vehicles in the status, in the order they entered it:
+    // adds up to limit of them from position from on to out, and returns the
+    // position the next call should start at, or -1 if none is left. A
+    // vehicle that leaves and re-enters the status moves to the end.
+    public long page(Vehicle.VehicleStatus status, long from, int limit, List<Vehicle> out) {
+        long next = -1;
+        int n = 0;
+        for (Map.Entry<Long, Vehicle> e : byStatus.get(status).tailMap(from).entrySet()) {
+            if (n++ == limit) {
+                next = e.getKey();
+                break;
+            }
+            out.add(e.getValue());
+        }
+        return next;
+    }
+
+    public int count(Vehicle.VehicleStatus status) {
+        return counts.get(status).get();
+    }
+
+    // Vehicles in the status per type, e.g. {Car=3, Minibus=1}.
+    public Map<String, Integer> countByType(Vehicle.VehicleStatus status) {
+        Map<String, Integer> result = new TreeMap<>();
+        typeCounts.get(status).forEach((type, count) -> {
+            int n = count.get();
+            if (n > 0) result.put(type, n);
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    private void place(Placement placement) {
+        synchronized (placement) {
+            if (placement.removed) return;
+            Vehicle.VehicleStatus current = placement.vehicle.getStatus();
+            if (placement.status == current) return;
+            if (placement.status != null) unplace(placement);
+
+            placement.status = current;
+            placement.entry = entries.incrementAndGet();
+            byStatus.get(current).put(placement.entry, placement.vehicle);
+            counts.get(current).incrementAndGet();
+            typeCounts.get(current).computeIfAbsent(placement.type, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    // Caller holds the placement's lock.
+    private void unplace(Placement placement) {
+        byStatus.get(placement.status).remove(placement.entry);
+        counts.get(placement.status).decrementAndGet();
+        typeCounts.get(placement.status).get(placement.type).decrementAndGet();
+    }
+
+    // Where one vehicle currently sits; guarded by its own lock.
+    private static final class Placement {
+        final Vehicle vehicle;
+        final String type;
+        Vehicle.VehicleStatus status;
+        long entry;
+        boolean removed;
+
+        Placement(Vehicle vehicle) {
+            this.vehicle = vehicle;
+            this.type = vehicle.getTypeName();
+        }
+    }
+}
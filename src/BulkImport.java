@@ -0,0 +1,33 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Command-line bulk import into the data directory (-Drental.dataDir).
+//
+// Usage: java BulkImport vehicles|customers <file, or - for stdin> [--all-or-nothing]
+public class BulkImport {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("vehicles") || args[0].equals("customers"))) {
+            System.out.println("Usage: java BulkImport vehicles|customers <file|-> [--all-or-nothing]");
+            System.exit(2);
+        }
+        boolean allOrNothing = args.length > 2 && args[2].equals("--all-or-nothing");
+
+        RentalSystem rentalSystem = RentalSystem.getInstance();
+        ImportReport report;
+        try (BufferedReader in = args[1].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            report = args[0].equals("vehicles")
+                    ? rentalSystem.importVehicles(in, allOrNothing)
+                    : rentalSystem.importCustomers(in, allOrNothing);
+        }
+
+        System.out.println(report);
+        System.exit(report.isCommitted() && report.getErrors().isEmpty() ? 0 : 1);
+    }
+}
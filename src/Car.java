@@ -1,18 +1,22 @@
 public class Car extends Vehicle implements Rentable {
-    private int numSeats;
 
     public Car(String make, String model, int year, int numSeats) {
         super(make, model, year);
-        this.numSeats = numSeats;
+        setSeats(numSeats);
     }
 
     public int getNumSeats() {
-        return numSeats;
+        return getSeats();
+    }
+
+    @Override
+    public String getTypeName() {
+        return "Car";
     }
 
     @Override
     public String getInfo() {
-        return super.getInfo() + " | Seats: " + numSeats;
+        return super.getInfo() + " | Seats: " + getSeats();
     }
 
     @Override
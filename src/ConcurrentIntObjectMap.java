@@ -0,0 +1,79 @@
+import java.util.function.Consumer;
+
+// Thread-safe int-keyed map built from lock-striped IntObjectMap segments,
+// so threads working on different keys rarely contend on the same lock.
+public class ConcurrentIntObjectMap<V> {
+    private static final int SEGMENTS = 32;
+
+    private final IntObjectMap<V>[] segments;
+
+    public ConcurrentIntObjectMap() {
+        segments = newSegments(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new IntObjectMap<>();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <V> IntObjectMap<V>[] newSegments(int n) {
+        return new IntObjectMap[n];
+    }
+
+    private IntObjectMap<V> segmentFor(int key) {
+        int h = key * 0x85EBCA6B;
+        return segments[(h >>> 27) & (SEGMENTS - 1)];
+    }
+
+    public V get(int key) {
+        IntObjectMap<V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    public V putIfAbsent(int key, V value) {
+        IntObjectMap<V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.putIfAbsent(key, value);
+        }
+    }
+
+    public V put(int key, V value) {
+        IntObjectMap<V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.put(key, value);
+        }
+    }
+
+    public V remove(int key) {
+        IntObjectMap<V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.remove(key);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (IntObjectMap<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void forEachValue(Consumer<? super V> action) {
+        for (IntObjectMap<V> segment : segments) {
+            synchronized (segment) {
+                segment.forEachValue(action);
+            }
+        }
+    }
+
+    public void forEachEntry(IntObjectMap.EntryConsumer<? super V> action) {
+        for (IntObjectMap<V> segment : segments) {
+            synchronized (segment) {
+                segment.forEachEntry(action);
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Streaming tokenizer for the comma-separated data files.
+//
+// Input is read in chunks into one reusable byte buffer and each line is
+// split into field offsets in place. Numbers, booleans, dates, plates and
+// enum names are parsed straight from those bytes, so a row only allocates
+// for the fields read as strings. Lines are trimmed and blank lines skipped
+// like DataFiles.forEachLine; fields are trimmed when they are parsed.
+public final class CsvReader implements Closeable {
+    private static final int CHUNK = 64 * 1024;
+
+    // 10^0 .. 10^22 are exact doubles, so one multiply or divide by them rounds correctly
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final FileChannel channel;  // null when reading from a ByteBuffer
+    private final ByteBuffer source;    // null when reading from a channel
+    private long unread;                // bytes the channel may still supply
+
+    private byte[] buf = new byte[CHUNK];
+    private int pos;
+    private int limit;
+
+    private int lineStart;
+    private int lineEnd;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private long lineNumber;
+
+    private CsvReader(FileChannel channel, long length, ByteBuffer source) {
+        this.channel = channel;
+        this.unread = length;
+        this.source = source;
+    }
+
+    // Reads the lines of the file starting in [from, to); Long.MAX_VALUE reads
+    // to the end. A missing file reads as empty.
+    public static CsvReader open(Path path, long from, long to) throws IOException {
+        if (!Files.exists(path)) return new CsvReader(null, 0, ByteBuffer.allocate(0));
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        long end = Math.min(to, channel.size());
+        channel.position(Math.min(from, end));
+        return new CsvReader(channel, Math.max(0, end - from), null);
+    }
+
+    // Reads the remaining bytes of the buffer (e.g. a mapped segment body).
+    public static CsvReader of(ByteBuffer bytes) {
+        return new CsvReader(null, 0, bytes.duplicate());
+    }
+
+    public static CsvReader of(String text) {
+        return of(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Advances to the next non-blank line; false at the end of the input.
+    public boolean next() throws IOException {
+        while (true) {
+            int newline = indexOf('\n', pos, limit);
+            while (newline < 0 && fill()) newline = indexOf('\n', pos, limit);
+            if (newline < 0 && pos == limit) return false;
+
+            int end = newline < 0 ? limit : newline;
+            lineNumber++;
+            lineStart = skipSpace(pos, end);
+            lineEnd = trimEnd(lineStart, end);
+            pos = newline < 0 ? limit : newline + 1;
+            if (lineStart < lineEnd) {
+                split();
+                return true;
+            }
+        }
+    }
+
+    // 1-based number of the current line within what this reader has read.
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public String line() {
+        return new String(buf, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    public String string(int field) {
+        int start = start(field);
+        return new String(buf, start, end(field) - start, StandardCharsets.UTF_8);
+    }
+
+    // The dictionary's canonical String for the field, adding it if it is new.
+    // Values already in the dictionary are looked up without allocating.
+    public String dictionaryField(int field, StringDictionary dictionary) {
+        int start = start(field);
+        return dictionary.decode(dictionary.encode(buf, start, end(field)));
+    }
+
+    // The field and everything after it on the line, commas included, as
+    // String.split(",", n) would return for its last part.
+    public String rest(int field) {
+        return new String(buf, fieldStarts[field], lineEnd - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+    public int intField(int field) {
+        int i = start(field);
+        int end = end(field);
+        boolean negative = i < end && buf[i] == '-';
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) i++;
+        if (i == end) throw numberFormat(field);
+
+        // accumulate negatively so Integer.MIN_VALUE fits
+        int result = 0;
+        for (; i < end; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9 || result < (Integer.MIN_VALUE + d) / 10) throw numberFormat(field);
+            result = result * 10 - d;
+        }
+        if (!negative && result == Integer.MIN_VALUE) throw numberFormat(field);
+        return negative ? result : -result;
+    }
+
+    // Plain decimals with up to 15 significant digits are converted exactly
+    // from the bytes; anything else (exponents, NaN, long mantissas) goes
+    // through Double.parseDouble.
+    public double doubleField(int field) {
+        int i = start(field);
+        int end = end(field);
+        boolean negative = i < end && buf[i] == '-';
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) i++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            if (buf[i] == '.' && !point) {
+                point = true;
+                continue;
+            }
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) break;
+            digits++;
+            if (point) scale++;
+            if (mantissa != 0 || d != 0) significant++;
+            mantissa = mantissa * 10 + d;
+            if (significant > 15) break;
+        }
+        if (i < end || digits == 0 || significant > 15 || scale >= POWERS_OF_TEN.length)
+            return Double.parseDouble(string(field));
+
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    // Like Boolean.parseBoolean: true only for "true", ignoring case.
+    public boolean booleanField(int field) {
+        return equalsIgnoreCase(field, "true");
+    }
+
+    // An ISO yyyy-MM-dd date as its epoch day; other forms go through LocalDate.parse.
+    public int epochDayField(int field) {
+        int s = start(field);
+        if (end(field) - s == 10 && buf[s + 4] == '-' && buf[s + 7] == '-') {
+            int year = digits(s, 4);
+            int month = digits(s + 5, 2);
+            int day = digits(s + 8, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month))
+                return (int) epochDay(year, month, day);
+        }
+        return Math.toIntExact(LocalDate.parse(string(field)).toEpochDay());
+    }
+
+    // The plate packed like Vehicle.packPlate, or -1 if it is not 3 letters + 3 digits.
+    public int plateField(int field) {
+        int s = start(field);
+        if (end(field) - s != 6) return -1;
+
+        int packed = 0;
+        for (int i = s; i < s + 3; i++) {
+            int c = buf[i] | 0x20; // fold to lower case
+            if (c < 'a' || c > 'z') return -1;
+            packed = packed * 26 + (c - 'a');
+        }
+        for (int i = s + 3; i < s + 6; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            packed = packed * 10 + d;
+        }
+        return packed;
+    }
+
+    // The constant whose name matches the field ignoring case, or null.
+    public <E extends Enum<E>> E enumField(int field, E[] constants) {
+        for (E constant : constants)
+            if (equalsIgnoreCase(field, constant.name())) return constant;
+        return null;
+    }
+
+    // ASCII case-insensitive comparison with the trimmed field.
+    public boolean equalsIgnoreCase(int field, String ascii) {
+        int s = start(field);
+        if (end(field) - s != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            int a = buf[s + i];
+            int b = ascii.charAt(i);
+            if (a != b && ((a | 0x20) != (b | 0x20) || (a | 0x20) < 'a' || (a | 0x20) > 'z')) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    // Moves the unread bytes to the front, growing the buffer for long lines,
+    // and reads more input after them. False once the input is exhausted.
+    private boolean fill() throws IOException {
+        if (channel == null ? !source.hasRemaining() : unread <= 0) return false;
+
+        int pending = limit - pos;
+        if (pending == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, pos, bigger, 0, pending);
+            buf = bigger;
+        } else {
+            System.arraycopy(buf, pos, buf, 0, pending);
+        }
+        pos = 0;
+        limit = pending;
+
+        int want = buf.length - limit;
+        if (channel == null) {
+            int n = Math.min(want, source.remaining());
+            source.get(buf, limit, n);
+            limit += n;
+        } else {
+            ByteBuffer into = ByteBuffer.wrap(buf, limit, (int) Math.min(want, unread));
+            int n = channel.read(into);
+            if (n < 0) {
+                unread = 0;
+                return false;
+            }
+            unread -= n;
+            limit += n;
+        }
+        return true;
+    }
+
+    private void split() {
+        fieldCount = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i < lineEnd && buf[i] != ',') continue;
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            }
+            fieldStarts[fieldCount] = start;
+            fieldEnds[fieldCount] = i;
+            fieldCount++;
+            start = i + 1;
+        }
+    }
+
+    private int start(int field) {
+        if (field >= fieldCount) throw new ArrayIndexOutOfBoundsException(field);
+        return skipSpace(fieldStarts[field], fieldEnds[field]);
+    }
+
+    private int end(int field) {
+        return trimEnd(fieldStarts[field], fieldEnds[field]);
+    }
+
+    // Trims like String.trim: every byte up to ' ' counts as space.
+    private int skipSpace(int from, int to) {
+        while (from < to && (buf[from] & 0xff) <= ' ') from++;
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (buf[to - 1] & 0xff) <= ' ') to--;
+        return to;
+    }
+
+    private int indexOf(int b, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (buf[i] == b) return i;
+        return -1;
+    }
+
+    // The unsigned decimal in buf[at, at + count), or -1 if it has a non-digit.
+    private int digits(int at, int count) {
+        int value = 0;
+        for (int i = at; i < at + count; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private NumberFormatException numberFormat(int field) {
+        return new NumberFormatException("For input string: \"" + string(field) + "\"");
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    // Days since 1970-01-01 for a valid date with year >= 0 (LocalDate.toEpochDay's arithmetic).
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) total -= lengthOfMonth(year, 2) == 29 ? 1 : 2;
+        return total - 719528;
+    }
+}
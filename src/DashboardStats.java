@@ -0,0 +1,90 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals for the dashboard, updated as each rental record is written
+// or replayed. LongAdder spreads concurrent updates over per-thread cells, so
+// rent/return never contend on a counter, and a read is a sum over a few cells.
+//
+// Totals cover the whole history: a snapshot stores them for the records it
+// covers, and only records after the snapshot are replayed on startup.
+public class DashboardStats {
+    private final LongAdder revenueCents = new LongAdder();
+    private final LongAdder feesCents = new LongAdder();
+    private final LongAdder rentals = new LongAdder();
+    private final LongAdder returns = new LongAdder();
+    private final ConcurrentIntObjectMap<LongAdder> rentalsByDay = new ConcurrentIntObjectMap<>();
+    private final AvailabilityIndex fleet;
+
+    private static final String DAY_PREFIX = "rentalsOn.";
+
+    public DashboardStats(AvailabilityIndex fleet) {
+        this.fleet = fleet;
+    }
+
+    // One RENT or RETURN record.
+    public void record(int epochDay, long cents, RecordType type) {
+        revenueCents.add(cents);
+        if (type == RecordType.RETURN) {
+            feesCents.add(cents);
+            returns.increment();
+        } else {
+            rentals.increment();
+            day(epochDay).increment();
+        }
+    }
+
+    public long getRevenueCents()    { return revenueCents.sum(); }
+    public long getFeesCents()       { return feesCents.sum(); }
+    public long getRentalCount()     { return rentals.sum(); }
+    public long getReturnCount()     { return returns.sum(); }
+
+    public long getRentalsOn(LocalDate date) {
+        LongAdder count = rentalsByDay.get((int) date.toEpochDay());
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getRentalsToday() {
+        return getRentalsOn(LocalDate.now());
+    }
+
+    // Currently rented vehicles per type, e.g. "Car", from the availability index.
+    public Map<String, Integer> getRentedByType() {
+        return fleet.countByType(Vehicle.VehicleStatus.Rented);
+    }
+
+    // Called with writers paused, so the totals match the snapshot position.
+    public void writeTo(Snapshot snapshot) {
+        snapshot.addStat("revenueCents", revenueCents.sum());
+        snapshot.addStat("feesCents", feesCents.sum());
+        snapshot.addStat("rentals", rentals.sum());
+        snapshot.addStat("returns", returns.sum());
+        rentalsByDay.forEachEntry((day, count) -> snapshot.addStat(DAY_PREFIX + day, count.sum()));
+    }
+
+    public void restore(Snapshot snapshot) {
+        for (Map.Entry<String, Long> stat : snapshot.getStats().entrySet()) {
+            String name = stat.getKey();
+            long value = stat.getValue();
+            if (name.startsWith(DAY_PREFIX)) {
+                day(Integer.parseInt(name.substring(DAY_PREFIX.length()))).add(value);
+            } else if (name.equals("revenueCents")) {
+                revenueCents.add(value);
+            } else if (name.equals("feesCents")) {
+                feesCents.add(value);
+            } else if (name.equals("rentals")) {
+                rentals.add(value);
+            } else if (name.equals("returns")) {
+                returns.add(value);
+            }
+        }
+    }
+
+    private LongAdder day(int epochDay) {
+        LongAdder count = rentalsByDay.get(epochDay);
+        if (count != null) return count;
+        LongAdder created = new LongAdder();
+        LongAdder existing = rentalsByDay.putIfAbsent(epochDay, created);
+        return existing != null ? existing : created;
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// Helpers for reading the newline-separated data files by byte range.
+public final class DataFiles {
+
+    private DataFiles() {}
+
+    // Calls action for every trimmed, non-empty line starting in [from, to).
+    // Pass Long.MAX_VALUE as 'to' to read to the end of the file.
+    public static void forEachLine(Path path, long from, long to, Consumer<String> action) throws IOException {
+        try (CsvReader in = CsvReader.open(path, from, to)) {
+            while (in.next()) action.accept(in.line());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Ring buffer of preallocated events, handled by a pipeline of stages
+// (in the style of the LMAX Disruptor).
+//
+// Producers claim a sequence number, fill the slot for it and publish it.
+// Each stage runs on its own thread and handles every event, in sequence
+// order, after the stage before it has; events published while a stage
+// was busy are handed to it as one batch. A caller that needs an event
+// handled, e.g. durably written, waits for that stage to pass its sequence.
+//
+// Ordering: every stage sees every event, in claim order. Producers that
+// need a per-key order (one vehicle's RENT before its RETURN) must claim
+// in that order.
+// Backpressure: claim() blocks while the ring is full, i.e. while the last
+// stage is a whole ring behind. Nothing is dropped or overwritten.
+// Failure: a stage may fail() an event; later stages can check isFailed()
+// and await() reports it to the producer. A handler that throws fails
+// every event of the batch it was handling. Failures are kept per slot
+// until the producer collects them in await(), so producers must await
+// every event they publish: the slot is not reused until they have.
+// Shutdown: halt() lets the stages finish what was published and stops
+// their threads; nothing can be claimed afterwards.
+//
+// Waiting threads spin briefly on multi-core machines, then block until
+// signalled. Yielding was tried in between; with many writers waiting it
+// only added context switches.
+public final class EventJournal<E> {
+
+    public interface Handler<E> {
+        // endOfBatch is true for the last event currently available to the stage.
+        void onEvent(E event, long sequence, boolean endOfBatch);
+    }
+
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+    private static final long BLOCK_MS = 100; // waits are signalled; this only bounds a missed one
+
+    private final String name;
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLongArray published; // per slot, the sequence last published in it
+    private final List<Stage> stages = new ArrayList<>();
+    private static final long NONE = Long.MIN_VALUE;
+    private final AtomicLongArray failed;  // per slot, a failed sequence not yet collected, or NONE
+    private final AtomicLongArray awaited; // per slot, the sequence last collected by await()
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean halted;
+
+    private final Object signal = new Object();
+    private final AtomicInteger sleepers = new AtomicInteger();
+
+    // Starts one daemon thread per handler; handlers run in list order.
+    public EventJournal(String name, int capacity, Supplier<E> factory, List<Handler<E>> handlers) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Journal capacity must be a power of two");
+        this.name = name;
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        this.failed = new AtomicLongArray(capacity);
+        this.awaited = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+            published.set(i, i - capacity); // nothing published yet
+            failed.set(i, NONE);
+            awaited.set(i, NONE);
+        }
+
+        for (int i = 0; i < handlers.size(); i++) {
+            Stage stage = new Stage(handlers.get(i));
+            stage.upstream = i == 0 ? () -> highestPublished(stage.sequence.get() + 1) : stages.get(i - 1).handled;
+            stages.add(stage);
+        }
+        for (int i = 0; i < stages.size(); i++) {
+            Thread t = new Thread(stages.get(i)::run, name + "-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    // The next sequence; blocks while the ring is full.
+    public long claim() {
+        if (halted) throw new IllegalStateException("Journal " + name + " is halted");
+        long sequence = claimed.incrementAndGet();
+        long replaced = sequence - slots.length;
+        waitFor(last().handled, replaced, false);
+        int i = (int) sequence & mask;
+        if (failed.get(i) == replaced) waitFor(() -> failed.get(i) == replaced ? -1 : 0, 0, false);
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) slots[(int) sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+        wake();
+    }
+
+    // For handlers: marks the event as not handled successfully.
+    public void fail(long sequence) {
+        int i = (int) sequence & mask;
+        failed.set(i, sequence);
+        // a failure after the producer has stopped waiting is never collected
+        if (awaited.get(i) == sequence) clearFailure(i, sequence);
+    }
+
+    public boolean isFailed(long sequence) {
+        return failed.get((int) sequence & mask) == sequence;
+    }
+
+    // Waits until the stage has handled the event; false if a stage up to
+    // and including it failed the event. Call once per event.
+    public boolean await(long sequence, int stage) {
+        waitFor(stages.get(stage).handled, sequence, false);
+        int i = (int) sequence & mask;
+        awaited.set(i, sequence);
+        if (failed.get(i) != sequence) return true;
+        clearFailure(i, sequence);
+        return false;
+    }
+
+    private void clearFailure(int slot, long sequence) {
+        if (failed.compareAndSet(slot, sequence, NONE)) wake();
+    }
+
+    // Waits until every stage has handled everything published so far.
+    // Callers must stop producers first to get a fixed point.
+    public void drain() {
+        waitFor(last().handled, claimed.get(), false);
+    }
+
+    // Drains, then stops the stage threads and waits for them to exit.
+    // Callers must stop producers first. Later calls do nothing.
+    public void halt() {
+        drain();
+        halted = true;
+        wake();
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private Stage last() {
+        return stages.get(stages.size() - 1);
+    }
+
+    // Highest sequence from which every event down to from is published.
+    private long highestPublished(long from) {
+        long limit = claimed.get();
+        for (long s = from; s <= limit; s++) {
+            if (published.get((int) s & mask) != s) return s - 1;
+        }
+        return limit;
+    }
+
+    // Returns the value reached, which is below target only if untilHalted
+    // and the journal was halted first.
+    private long waitFor(LongSupplier reached, long target, boolean untilHalted) {
+        long value;
+        boolean interrupted = false;
+        for (int attempt = 0; (value = reached.getAsLong()) < target && !(untilHalted && halted); attempt++) {
+            if (attempt < SPINS) continue;
+            // announce the sleep before the last check, so a wake() that misses it sees the announcement
+            sleepers.incrementAndGet();
+            try {
+                synchronized (signal) {
+                    if (reached.getAsLong() < target && !(untilHalted && halted)) signal.wait(BLOCK_MS);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true; // the event is already in flight; finish waiting for it
+            } finally {
+                sleepers.decrementAndGet();
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return value;
+    }
+
+    private void wake() {
+        if (sleepers.get() == 0) return;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private final class Stage {
+        final Handler<E> handler;
+        final AtomicLong sequence = new AtomicLong(-1); // last event handled
+        final LongSupplier handled = sequence::get;
+        LongSupplier upstream;
+
+        Stage(Handler<E> handler) {
+            this.handler = handler;
+        }
+
+        void run() {
+            long next = 0;
+            while (true) {
+                long available = waitFor(upstream, next, true);
+                if (available < next) return; // halted with nothing left
+                try {
+                    for (long s = next; s <= available; s++) handler.onEvent(get(s), s, s == available);
+                } catch (RuntimeException e) {
+                    // handlers may act at the end of a batch, so none of it is known to be done
+                    System.out.println("Error in " + name + " journal handler: " + e);
+                    for (long s = next; s <= available; s++) fail(s);
+                }
+                sequence.set(available);
+                wake();
+                next = available + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class EventJournalTest {
+
+    private static final int CAPACITY = 8;
+
+    @Test
+    public void testThrowingHandlerFailsItsEvents() {
+
+        List<Long> applied = new CopyOnWriteArrayList<>();
+        EventJournal<long[]> journal = journal(applied);
+        try {
+            // negative values make the first stage throw; later stages skip what it failed
+            for (long value : new long[] { 1, -1, 2, -2, 3 }) {
+                long sequence = publish(journal, value);
+                assertEquals(value > 0, journal.await(sequence, 1), "event " + value);
+            }
+            assertEquals(Arrays.asList(1L, 2L, 3L), applied);
+        } finally {
+            journal.halt();
+        }
+    }
+
+    @Test
+    public void testUncollectedFailuresDoNotHoldSlots() {
+
+        // the last stage fails every event after its producer has collected
+        // it; those failures must not keep the slots from being reused
+        List<Long> applied = new CopyOnWriteArrayList<>();
+        EventJournal<long[]> journal = journal(applied);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (long value = 1; value <= 20 * CAPACITY; value++)
+                assertTrue(journal.await(publish(journal, value), 1));
+        });
+        assertEquals(20 * CAPACITY, applied.size());
+        journal.halt(); // not on failure: a claim stuck on a held slot would never drain
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventJournal<long[]> journal(List<Long> applied) {
+        EventJournal<long[]>[] self = new EventJournal[1];
+        self[0] = new EventJournal<>("test", CAPACITY, () -> new long[1], Arrays.asList(
+                (event, sequence, endOfBatch) -> {
+                    if (event[0] < 0) throw new IllegalStateException("cannot handle " + event[0]);
+                },
+                (event, sequence, endOfBatch) -> {
+                    if (!self[0].isFailed(sequence)) applied.add(event[0]);
+                },
+                // by the time it handles an event, the single producer has collected the one before
+                (event, sequence, endOfBatch) -> {
+                    if (sequence > 0) self[0].fail(sequence - 1);
+                }));
+        return self[0];
+    }
+
+    private static long publish(EventJournal<long[]> journal, long value) {
+        long sequence = journal.claim();
+        journal.get(sequence)[0] = value;
+        journal.publish(sequence);
+        return sequence;
+    }
+}
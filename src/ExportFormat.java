@@ -0,0 +1,65 @@
+// File formats for RentalSystem.exportRentalHistory.
+//
+// CSV:  a header line, then TYPE,PLATE,CUSTOMER_ID,CUSTOMER_NAME,YYYY-MM-DD,AMOUNT
+// JSON: one array of {"type", "plate", "customerId", "customerName", "date", "amount"}
+//       objects, one per line
+public enum ExportFormat {
+
+    CSV {
+        @Override
+        void begin(RowWriter out) {
+            out.append("type,plate,customer_id,customer_name,date,amount").endRow();
+        }
+
+        @Override
+        void row(RowWriter out, long index, RecordType type, int plate, int customerId, String customerName,
+                 int epochDay, long cents) {
+            out.append(type.name()).append(',').plate(plate).append(',').append(customerId).append(',')
+               .csv(customerName).append(',').date(epochDay).append(',').money(cents).endRow();
+        }
+
+        @Override
+        void end(RowWriter out, long rows) {
+        }
+    },
+
+    JSON {
+        @Override
+        void begin(RowWriter out) {
+            out.append('[').endRow();
+        }
+
+        @Override
+        void row(RowWriter out, long index, RecordType type, int plate, int customerId, String customerName,
+                 int epochDay, long cents) {
+            if (index > 0) out.append(',').endRow();
+            out.append("  {\"type\":\"").append(type.name())
+               .append("\",\"plate\":\"").plate(plate)
+               .append("\",\"customerId\":").append(customerId)
+               .append(",\"customerName\":").json(customerName)
+               .append(",\"date\":\"").date(epochDay)
+               .append("\",\"amount\":").money(cents).append('}');
+        }
+
+        @Override
+        void end(RowWriter out, long rows) {
+            if (rows > 0) out.endRow();
+            out.append(']').endRow();
+        }
+    };
+
+    // Case-insensitive, or null if the name is not a format.
+    public static ExportFormat parse(String name) {
+        for (ExportFormat format : values())
+            if (format.name().equalsIgnoreCase(name.trim())) return format;
+        return null;
+    }
+
+    abstract void begin(RowWriter out);
+
+    // index counts the rows written before this one.
+    abstract void row(RowWriter out, long index, RecordType type, int plate, int customerId, String customerName,
+                      int epochDay, long cents);
+
+    abstract void end(RowWriter out, long rows);
+}
@@ -0,0 +1,323 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Off-heap storage for the vehicles of a fleet. A vehicle attached to the
+// store moves all of its attributes and its status into a slot and keeps
+// only the slot number, so a multi-million-vehicle fleet costs the GC one
+// small object per vehicle and nothing else.
+//
+// Slots are fixed-width and never move, in 64K-slot chunks of direct memory
+// or of a memory-mapped file. The mapped file is scratch space, not
+// persistence: it is truncated on open, deleted on close, and the data files
+// remain the source of truth. Slots are found by packed plate through an
+// open-addressing table of slot numbers, also off-heap.
+//
+// A published vehicle reads its slot until the store is closed, so a slot
+// is only reused once its vehicle has been detached, which is only allowed
+// before the vehicle is published. release() gives up a published vehicle's
+// plate but not its slot.
+//
+// Slot layout (SLOT_SIZE bytes):
+//   int    packed plate
+//   int    make code
+//   int    model code
+//   int    year
+//   int    seats
+//   int    horsepower
+//   double size
+//   byte   status ordinal
+//   byte   flags
+//   6      unused
+public final class FleetStore implements Closeable {
+    private static final int SLOT_SIZE = 40;
+    private static final int PLATE = 0;
+    static final int MAKE = 4;
+    static final int MODEL = 8;
+    static final int YEAR = 12;
+    static final int SEATS = 16;
+    static final int HORSEPOWER = 20;
+    static final int SIZE = 24;
+    private static final int STATUS = 32;
+    private static final int FLAGS = 33;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    private static final long CHUNK_BYTES = (long) CHUNK_SLOTS * SLOT_SIZE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private static final Vehicle.VehicleStatus[] STATUSES = Vehicle.VehicleStatus.values();
+
+    private final Path path;        // null for direct memory
+    private final FileChannel file; // null for direct memory
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0]; // null once closed
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    // slot + 1 per bucket, 0 when empty
+    private IntBuffer table = allocateTable(1024);
+    private int size;
+
+    // status and flag reads and writes of a slot hold its stripe's lock
+    private final Object[] stripes = new Object[64];
+
+    private FleetStore(Path path, FileChannel file) {
+        this.path = path;
+        this.file = file;
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Object();
+    }
+
+    public static FleetStore direct() {
+        return new FleetStore(null, null);
+    }
+
+    public static FleetStore mapped(Path path) throws IOException {
+        return new FleetStore(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    // Moves the vehicle's attributes and status into a slot and turns it
+    // into a view of that slot. Returns false, leaving the vehicle as it
+    // was, if it is already stored or another vehicle with its plate is.
+    // Call before the vehicle is shared with other threads.
+    public synchronized boolean attach(Vehicle vehicle) {
+        int plate = vehicle.getPackedPlate();
+        if (plate < 0) throw new IllegalArgumentException("Vehicle has no valid license plate");
+        checkOpen();
+        if (vehicle.isStored() || find(plate) >= 0) return false;
+
+        int slot;
+        try {
+            slot = allocate();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow the fleet store: " + e.getMessage(), e);
+        }
+        Vehicle.Attributes a = vehicle.getAttributes();
+        ByteBuffer chunk = chunk(slot);
+        int at = offset(slot);
+        chunk.putInt(at + PLATE, plate);
+        chunk.putInt(at + MAKE, a.makeCode);
+        chunk.putInt(at + MODEL, a.modelCode);
+        chunk.putInt(at + YEAR, a.year);
+        chunk.putInt(at + SEATS, a.seats);
+        chunk.putInt(at + HORSEPOWER, a.horsepower);
+        chunk.putDouble(at + SIZE, a.size);
+        chunk.put(at + STATUS, (byte) a.status.ordinal());
+        chunk.put(at + FLAGS, (byte) a.flags);
+
+        insert(plate, slot);
+        vehicle.attached(this, slot);
+        return true;
+    }
+
+    // Copies the slot back into the vehicle and frees the slot, for a vehicle
+    // that was attached but then never published (see release()).
+    public synchronized void detach(Vehicle vehicle) {
+        if (vehicle.getStore() != this || chunks == null) return;
+        int slot = vehicle.getSlot();
+        ByteBuffer chunk = chunk(slot);
+        int at = offset(slot);
+        Vehicle.Attributes a = new Vehicle.Attributes();
+        a.licensePlate = Vehicle.unpackPlate(vehicle.getPackedPlate());
+        a.makeCode = chunk.getInt(at + MAKE);
+        a.modelCode = chunk.getInt(at + MODEL);
+        a.year = chunk.getInt(at + YEAR);
+        a.seats = chunk.getInt(at + SEATS);
+        a.horsepower = chunk.getInt(at + HORSEPOWER);
+        a.size = chunk.getDouble(at + SIZE);
+        a.status = status(slot);
+        a.flags = flags(slot);
+        vehicle.detached(a);
+
+        if (find(vehicle.getPackedPlate()) == slot) delete(vehicle.getPackedPlate());
+        chunk.putInt(at + PLATE, -1);
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Gives up the vehicle's plate, so that another vehicle can be stored
+    // under it, for a vehicle that was published and then removed. The
+    // vehicle stays a view of its slot, which other threads may still be
+    // reading, so the slot is not reused.
+    public synchronized void release(Vehicle vehicle) {
+        if (vehicle.getStore() != this || chunks == null) return;
+        if (find(vehicle.getPackedPlate()) == vehicle.getSlot()) delete(vehicle.getPackedPlate());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean contains(int packedPlate) {
+        return chunks != null && find(packedPlate) >= 0;
+    }
+
+    // Attributes other than the status and flags are written before the
+    // vehicle is published and never change, so they are read without a lock.
+
+    int getInt(int slot, int field) {
+        return chunk(slot).getInt(offset(slot) + field);
+    }
+
+    double getDouble(int slot, int field) {
+        return chunk(slot).getDouble(offset(slot) + field);
+    }
+
+    int flags(int slot) {
+        synchronized (stripe(slot)) {
+            return chunk(slot).get(offset(slot) + FLAGS);
+        }
+    }
+
+    void setFlag(int slot, int flag, boolean on) {
+        synchronized (stripe(slot)) {
+            int flags = chunk(slot).get(offset(slot) + FLAGS);
+            chunk(slot).put(offset(slot) + FLAGS, (byte) (on ? flags | flag : flags & ~flag));
+        }
+    }
+
+    Vehicle.VehicleStatus status(int slot) {
+        synchronized (stripe(slot)) {
+            return STATUSES[chunk(slot).get(offset(slot) + STATUS)];
+        }
+    }
+
+    Vehicle.VehicleStatus getAndSetStatus(int slot, Vehicle.VehicleStatus status) {
+        synchronized (stripe(slot)) {
+            Vehicle.VehicleStatus old = STATUSES[chunk(slot).get(offset(slot) + STATUS)];
+            chunk(slot).put(offset(slot) + STATUS, (byte) status.ordinal());
+            return old;
+        }
+    }
+
+    boolean compareAndSetStatus(int slot, Vehicle.VehicleStatus expected, Vehicle.VehicleStatus update) {
+        synchronized (stripe(slot)) {
+            if (chunk(slot).get(offset(slot) + STATUS) != expected.ordinal()) return false;
+            chunk(slot).put(offset(slot) + STATUS, (byte) update.ordinal());
+            return true;
+        }
+    }
+
+    // Drops the store's buffers and deletes the mapped file. The memory is
+    // returned when the buffers are garbage collected: unmapping it here
+    // would crash a thread still reading a vehicle instead of failing it.
+    // Vehicles of a closed store throw IllegalStateException.
+    @Override
+    public synchronized void close() throws IOException {
+        if (chunks == null) return;
+        chunks = null;
+        table = null;
+        if (file != null) {
+            file.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void checkOpen() {
+        if (chunks == null) throw new IllegalStateException("Fleet store is closed");
+    }
+
+    private Object stripe(int slot) {
+        return stripes[slot & (stripes.length - 1)];
+    }
+
+    private ByteBuffer chunk(int slot) {
+        ByteBuffer[] current = chunks;
+        if (current == null) throw new IllegalStateException("Fleet store is closed");
+        return current[slot >>> CHUNK_BITS];
+    }
+
+    private static int offset(int slot) {
+        return (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    // Caller holds the store's lock.
+    private int allocate() throws IOException {
+        if (freeCount > 0) return freeSlots[--freeCount];
+
+        int slot = slotCount;
+        if ((slot >>> CHUNK_BITS) == chunks.length) {
+            ByteBuffer chunk = file == null
+                    ? ByteBuffer.allocateDirect((int) CHUNK_BYTES)
+                    : file.map(FileChannel.MapMode.READ_WRITE, chunks.length * CHUNK_BYTES, CHUNK_BYTES);
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = chunk;
+            chunks = grown;
+        }
+        slotCount++;
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int plateAt(int bucket) {
+        int slot = table.get(bucket) - 1;
+        return chunk(slot).getInt(offset(slot) + PLATE);
+    }
+
+    // Caller holds the store's lock; -1 if the plate is not stored.
+    private int find(int plate) {
+        int mask = table.capacity() - 1;
+        for (int i = mix(plate) & mask; table.get(i) != 0; i = (i + 1) & mask) {
+            if (plateAt(i) == plate) return table.get(i) - 1;
+        }
+        return -1;
+    }
+
+    private void insert(int plate, int slot) {
+        if (++size > table.capacity() * LOAD_FACTOR) rehash(table.capacity() << 1);
+        int mask = table.capacity() - 1;
+        int i = mix(plate) & mask;
+        while (table.get(i) != 0) i = (i + 1) & mask;
+        table.put(i, slot + 1);
+    }
+
+    // Same backward-shift deletion as IntObjectMap, so probe chains stay unbroken.
+    private void delete(int plate) {
+        int mask = table.capacity() - 1;
+        int i = mix(plate) & mask;
+        for (; table.get(i) != 0; i = (i + 1) & mask) {
+            if (plateAt(i) == plate) break;
+        }
+        if (table.get(i) == 0) return;
+        table.put(i, 0);
+        size--;
+
+        int gap = i;
+        for (int j = (i + 1) & mask; table.get(j) != 0; j = (j + 1) & mask) {
+            int home = mix(plateAt(j)) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table.put(gap, table.get(j));
+                table.put(j, 0);
+                gap = j;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        IntBuffer old = table;
+        table = allocateTable(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.capacity(); j++) {
+            if (old.get(j) == 0) continue;
+            int slot = old.get(j) - 1;
+            int i = mix(chunk(slot).getInt(offset(slot) + PLATE)) & mask;
+            while (table.get(i) != 0) i = (i + 1) & mask;
+            table.put(i, old.get(j));
+        }
+    }
+
+    private static IntBuffer allocateTable(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+    }
+}
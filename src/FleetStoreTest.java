@@ -0,0 +1,150 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+public class FleetStoreTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void testDirectFleet() throws Exception {
+        runFleet(RentalConfig.FleetStorage.DIRECT);
+    }
+
+    @Test
+    public void testMappedFleet() throws Exception {
+        runFleet(RentalConfig.FleetStorage.MAPPED);
+    }
+
+    // Every attribute of every vehicle type goes through the store and the
+    // saved ones survive a restart; a vehicle that loses a plate race keeps
+    // working on the heap.
+    private void runFleet(RentalConfig.FleetStorage storage) throws Exception {
+
+        RentalConfig config = new RentalConfig();
+        config.setDataDir(dataDir);
+        config.setMetrics(false);
+        config.setFleetStorage(storage);
+
+        Vehicle car = vehicle(new Car("Toyota", "Corolla", 2019, 5), "FSA001");
+        Vehicle sport = vehicle(new SportCar("Porsche", "911", 2022, 2, 380, true), "FSA002");
+        Minibus bus = (Minibus) vehicle(new Minibus("Ford", "Transit", 2018, true), "FSA003");
+        Vehicle truck = vehicle(new PickupTruck("Ford", "Ranger", 2021, 2.5, true), "FSA004");
+        Customer customer = new Customer(7, "Fleet Store");
+
+        RentalSystem system = new RentalSystem(config);
+        for (Vehicle v : new Vehicle[] { car, sport, bus, truck }) {
+            assertTrue(system.addVehicle(v));
+            assertTrue(v.isStored());
+        }
+        assertTrue(system.addCustomer(customer));
+        checkAttributes(car, bus, truck);
+        assertTrue(sport.getInfo().endsWith("| Seats: 2 | Horsepower: 380 | Turbo: Yes"));
+        assertEquals("SportCar", sport.getTypeName());
+        assertEquals(1, system.countVehiclesByType(Vehicle.VehicleStatus.Available).get("SportCar"));
+
+        Vehicle duplicate = vehicle(new Car("Honda", "Civic", 2015, 4), "FSA001");
+        assertFalse(system.addVehicle(duplicate));
+        assertFalse(duplicate.isStored());
+        assertEquals("Honda", duplicate.getMake());
+        assertEquals(2015, duplicate.getYear());
+        assertEquals(4, ((Car) duplicate).getNumSeats());
+        assertEquals("FSA001", duplicate.getLicensePlate());
+
+        assertTrue(system.rentVehicle(car, customer, LocalDate.now(), 50));
+        assertEquals(Vehicle.VehicleStatus.Rented, car.getStatus());
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.Rented));
+        VehicleQuery accessible = new VehicleQuery();
+        accessible.setAccessible(true);
+        assertEquals(1, system.searchVehicles(accessible).size());
+        bus.setAccessible(false);
+        assertFalse(bus.isAccessible());
+        assertEquals(0, system.searchVehicles(accessible).size());
+        bus.setAccessible(true);
+        assertEquals(1, system.searchVehicles(accessible).size());
+
+        VehicleQuery query = new VehicleQuery();
+        query.setSeatRange(4, null);
+        assertEquals(1, system.searchVehicles(query).size());
+        system.close();
+
+        // the store is gone with the system; a stored vehicle now fails instead of reading freed memory
+        assertFalse(Files.exists(config.resolve("fleet.slots")));
+        assertThrows(IllegalStateException.class, car::getStatus);
+
+        try (RentalSystem reopened = new RentalSystem(config)) {
+            Vehicle rented = reopened.findVehicleByPlate("FSA001");
+            assertTrue(rented.isStored());
+            assertEquals(Vehicle.VehicleStatus.Rented, rented.getStatus());
+            checkAttributes(rented, (Minibus) reopened.findVehicleByPlate("FSA003"),
+                    reopened.findVehicleByPlate("FSA004"));
+        }
+    }
+
+    @Test
+    public void testSlotsAcrossChunksAndReleasedPlates() throws Exception {
+
+        try (FleetStore store = FleetStore.direct()) {
+            // more than one 64K-slot chunk
+            Car[] cars = new Car[70_000];
+            for (int i = 0; i < cars.length; i++) {
+                cars[i] = new Car("Make", "Model", 2000 + i % 20, i % 9);
+                cars[i].setPackedPlate(i);
+                assertTrue(store.attach(cars[i]));
+            }
+            assertEquals(cars.length, store.size());
+            for (int i = 0; i < cars.length; i += 997) {
+                assertTrue(store.contains(i));
+                assertEquals(2000 + i % 20, cars[i].getYear());
+                assertEquals(i % 9, cars[i].getNumSeats());
+                assertEquals(Vehicle.unpackPlate(i), cars[i].getLicensePlate());
+            }
+
+            // a released vehicle keeps its slot while its plate goes to a new vehicle
+            int released = cars[12345].getSlot();
+            store.release(cars[12345]);
+            assertFalse(store.contains(12345));
+            Car successor = new Car("Other", "Model", 2024, 3);
+            successor.setPackedPlate(12345);
+            assertTrue(store.attach(successor));
+            assertNotEquals(released, successor.getSlot());
+            assertEquals(2000 + 12345 % 20, cars[12345].getYear());
+            assertEquals(2024, successor.getYear());
+            assertFalse(store.attach(cars[1]), "already stored");
+
+            // a detached vehicle's slot is reused
+            int freed = successor.getSlot();
+            store.detach(successor);
+            assertFalse(successor.isStored());
+            assertEquals(3, successor.getNumSeats());
+            Car next = new Car("Next", "Model", 2024, 2);
+            next.setPackedPlate(999_999);
+            assertTrue(store.attach(next));
+            assertEquals(freed, next.getSlot());
+            assertTrue(cars[cars.length - 1].compareAndSetStatus(Vehicle.VehicleStatus.Available,
+                    Vehicle.VehicleStatus.Rented));
+            assertEquals(Vehicle.VehicleStatus.Rented, cars[cars.length - 1].getStatus());
+        }
+    }
+
+    private static Vehicle vehicle(Vehicle v, String plate) {
+        v.setLicensePlate(plate);
+        return v;
+    }
+
+    private static void checkAttributes(Vehicle car, Minibus bus, Vehicle truck) {
+        assertEquals("FSA001", car.getLicensePlate());
+        assertEquals("Toyota", car.getMake());
+        assertEquals("Corolla", car.getModel());
+        assertEquals(2019, car.getYear());
+        assertEquals(5, ((Car) car).getNumSeats());
+        assertTrue(bus.isAccessible());
+        assertEquals(2.5, ((PickupTruck) truck).getCargoSize());
+        assertTrue(((PickupTruck) truck).hasTrailer());
+        assertEquals("Ranger", truck.getModel());
+    }
+}
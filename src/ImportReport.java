@@ -0,0 +1,62 @@
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a bulk import: the rows that were rejected and why, and how many
+// were written. When the import was all-or-nothing and anything failed,
+// nothing is written and committed is false.
+public class ImportReport {
+    private final int rowsRead;
+    private final int imported;
+    private final List<RowError> errors;
+    private final boolean committed;
+    private final String failure;
+
+    public ImportReport(int rowsRead, int imported, List<RowError> errors, boolean committed, String failure) {
+        this.rowsRead = rowsRead;
+        this.imported = imported;
+        this.errors = Collections.unmodifiableList(errors);
+        this.committed = committed;
+        this.failure = failure;
+    }
+
+    public int getRowsRead() { return rowsRead; }
+    public int getImported() { return imported; }
+    public List<RowError> getErrors() { return errors; }
+    public boolean isCommitted() { return committed; }
+
+    // Why nothing was written (a failed write, or rejected rows in an
+    // all-or-nothing import); null otherwise.
+    public String getFailure() { return failure; }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append("Read ").append(rowsRead).append(" rows, imported ").append(imported)
+           .append(", rejected ").append(errors.size());
+        if (failure != null) out.append(" - nothing written: ").append(failure);
+        for (RowError e : errors)
+            out.append("\n  ").append(e);
+        return out.toString();
+    }
+
+    public static class RowError {
+        private final int line;
+        private final String row;
+        private final String message;
+
+        public RowError(int line, String row, String message) {
+            this.line = line;
+            this.row = row;
+            this.message = message;
+        }
+
+        public int getLine() { return line; }
+        public String getRow() { return row; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message + " [" + row + "]";
+        }
+    }
+}
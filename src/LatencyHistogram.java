@@ -0,0 +1,127 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram with HdrHistogram-style log-linear buckets.
+//
+// Values (nanoseconds) below 64 get a bucket each; above that every power of
+// two is split into 32 equal buckets, so any value is reported within about
+// 3% of what was recorded. Recording is one atomic increment plus a LongAdder
+// add, with no locks and no allocation; readers copy the bucket counts and
+// may see a concurrent recording in some totals and not others.
+public final class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;           // buckets per power of two
+    private static final int MAX_SHIFT = 40 - SUB_BITS - 1;           // tracks values up to 2^40 ns (18 min)
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_SHIFT + 2) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.getAndIncrement(index(value));
+        total.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) current = max.get();
+    }
+
+    // The smallest bucket upper bound at or above the percentile (0..100) of
+    // the recorded values, in nanoseconds; 0 if nothing was recorded.
+    public long valueAtPercentile(double percentile) {
+        long[] snapshot = snapshot();
+        long count = 0;
+        for (long c : snapshot) count += c;
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) count += counts.get(i);
+        return count;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : total.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return valueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return valueAtPercentile(90) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return valueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return valueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1000.0;
+    }
+
+    // One line of count, mean, percentiles and max, in microseconds.
+    public String summary() {
+        return String.format("%-22s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f",
+                name, getCount(), getMeanMicros(), getP50Micros(), getP90Micros(), getP99Micros(),
+                getP999Micros(), getMaxMicros());
+    }
+
+    static String summaryHeader() {
+        return String.format("%-22s %10s %10s %10s %10s %10s %10s %10s",
+                "operation (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+
+    // Values below 2 * SUB_BUCKETS map to themselves; above, the top SUB_BITS + 1
+    // bits pick the bucket, so bucket = shift * SUB_BUCKETS + (value >>> shift).
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
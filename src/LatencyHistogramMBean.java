@@ -0,0 +1,10 @@
+// JMX view of a LatencyHistogram; times are in microseconds since startup.
+public interface LatencyHistogramMBean {
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP90Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+}
@@ -0,0 +1,26 @@
+import java.nio.ByteBuffer;
+
+// Zero-copy view over the body of a BINARY rental log segment. Fields are
+// read straight out of the mapped file; nothing is decoded until asked for.
+public class MappedRecords {
+    private final ByteBuffer body;
+    private final int count;
+
+    public MappedRecords(ByteBuffer body) {
+        this.body = body.slice();
+        this.count = this.body.remaining() / RecordFormat.ENTRY_SIZE;
+    }
+
+    public int size() { return count; }
+
+    public int packedPlate(int i) { return body.getInt(i * RecordFormat.ENTRY_SIZE); }
+    public int customerId(int i)  { return body.getInt(i * RecordFormat.ENTRY_SIZE + 4); }
+    public int epochDay(int i)    { return body.getInt(i * RecordFormat.ENTRY_SIZE + 8); }
+    public long cents(int i)      { return body.getLong(i * RecordFormat.ENTRY_SIZE + 12); }
+    public byte type(int i)       { return body.get(i * RecordFormat.ENTRY_SIZE + 20); }
+
+    public void forEach(RecordVisitor visitor) {
+        for (int i = 0; i < count; i++)
+            visitor.visit(packedPlate(i), customerId(i), epochDay(i), cents(i), type(i));
+    }
+}
@@ -1,23 +1,26 @@
 public class Minibus extends Vehicle implements Rentable {
 
-    private boolean isAccessible;
-
     public Minibus(String make, String model, int year, boolean isAccessible) {
         super(make, model, year);
-        this.isAccessible = isAccessible;
+        setFlag(ACCESSIBLE, isAccessible);
     }
 
     public boolean isAccessible() {
-        return isAccessible;
+        return getFlag(ACCESSIBLE);
     }
 
     public void setAccessible(boolean accessible) {
-        this.isAccessible = accessible;
+        setFlag(ACCESSIBLE, accessible);
+    }
+
+    @Override
+    public String getTypeName() {
+        return "Minibus";
     }
 
     @Override
     public String getInfo() {
-        return super.getInfo() + " | Accessible: " + (isAccessible ? "Yes" : "No");
+        return super.getInfo() + " | Accessible: " + (isAccessible() ? "Yes" : "No");
     }
 
     @Override
@@ -0,0 +1,45 @@
+import java.util.Collections;
+import java.util.List;
+
+// One page of a cursor listing. Pass getNextToken() back to get the page
+// after it; it is null on the last page. Tokens stay valid while the
+// listing changes: rows or vehicles added later show up on later pages,
+// and ones removed are skipped.
+public class Page<T> {
+    private final List<T> items;
+    private final String nextToken;
+
+    Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    // A token is the position to resume at; -1 means the listing is done.
+    static String token(int position) {
+        return position < 0 ? null : Integer.toString(position, 36);
+    }
+
+    // The position a token resumes at; null starts from the beginning.
+    static int position(String token) {
+        if (token == null) return 0;
+        try {
+            int position = Integer.parseInt(token, 36);
+            if (position >= 0) return position;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid page token: " + token);
+    }
+}
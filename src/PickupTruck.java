@@ -1,25 +1,28 @@
 public class PickupTruck extends Vehicle implements Rentable {
-    private double cargoSize;
-    private boolean hasTrailer;
 
     public PickupTruck(String make, String model, int year, double cargoSize, boolean hasTrailer) {
         super(make, model, year);
         if (cargoSize <= 0) throw new IllegalArgumentException("Cargo size must be > 0");
-        this.cargoSize = cargoSize;
-        this.hasTrailer = hasTrailer;
+        setSize(cargoSize);
+        setFlag(TRAILER, hasTrailer);
     }
 
     public double getCargoSize() {
-        return cargoSize;
+        return getSize();
     }
 
     public boolean hasTrailer() {
-        return hasTrailer;
+        return getFlag(TRAILER);
+    }
+
+    @Override
+    public String getTypeName() {
+        return "PickupTruck";
     }
 
     @Override
     public String getInfo() {
-        return super.getInfo() + " | Cargo Size: " + cargoSize + " | Has Trailer: " + (hasTrailer ? "Yes" : "No");
+        return super.getInfo() + " | Cargo Size: " + getSize() + " | Has Trailer: " + (getFlag(TRAILER) ? "Yes" : "No");
     }
 
     @Override
@@ -0,0 +1,35 @@
+import java.time.LocalDate;
+
+// Conjunctive filter for paging through and exporting the rental history.
+// Unset fields do not constrain the result; the date range is inclusive.
+public class RecordFilter {
+    private String licensePlate;
+    private Integer customerId;
+    private LocalDate from;
+    private LocalDate to;
+    private RecordType type;
+
+    public String getLicensePlate() { return licensePlate; }
+    public Integer getCustomerId() { return customerId; }
+    public LocalDate getFrom() { return from; }
+    public LocalDate getTo() { return to; }
+    public RecordType getType() { return type; }
+
+    public void setLicensePlate(String licensePlate) {
+        this.licensePlate = licensePlate;
+    }
+
+    public void setCustomerId(Integer customerId) {
+        this.customerId = customerId;
+    }
+
+    // Either end may be null for an open range.
+    public void setDateRange(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public void setType(RecordType type) {
+        this.type = type;
+    }
+}
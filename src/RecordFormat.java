@@ -0,0 +1,116 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// On-disk encodings for rental log segment bodies.
+//
+// CSV:    TYPE,PLATE,CUSTOMER_ID,YYYY-MM-DD,AMOUNT\n
+// BINARY: fixed 21-byte big-endian entries
+//           int  packed plate (Vehicle.packPlate)
+//           int  customer id
+//           int  epoch day
+//           long amount in cents
+//           byte type (RecordType ordinal)
+public enum RecordFormat {
+
+    CSV(".log", "rental_records") {
+        @Override
+        public byte[] encode(RentalRecord record) {
+            return (record.getRecordType() + "," +
+                    record.getVehicle().getLicensePlate() + "," +
+                    record.getCustomer().getCustomerId() + "," +
+                    record.getRecordDate() + "," +
+                    record.getTotalAmount() + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] encodeCsv(String line) {
+            return (line + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long countRecords(ByteBuffer body) {
+            long count = 0;
+            for (int i = body.position(); i < body.limit(); i++)
+                if (body.get(i) == '\n') count++;
+            return count;
+        }
+
+        @Override
+        public int completeLength(ByteBuffer body) {
+            for (int i = body.limit() - 1; i >= body.position(); i--)
+                if (body.get(i) == '\n') return i + 1 - body.position();
+            return 0;
+        }
+    },
+
+    BINARY(".bin", "rental_records.bin") {
+        @Override
+        public byte[] encode(RentalRecord record) {
+            return encode(record.getVehicle().getPackedPlate(), record.getCustomer().getCustomerId(),
+                    record.getRecordDate().toEpochDay(), toCents(record.getTotalAmount()),
+                    typeCode(record.getRecordType()));
+        }
+
+        @Override
+        public byte[] encodeCsv(String line) {
+            String[] parts = line.split(",");
+            if (parts.length < 5) throw new IllegalArgumentException("Malformed record: " + line);
+            int plate = Vehicle.packPlate(parts[1].trim());
+            if (plate < 0) throw new IllegalArgumentException("Invalid plate in record: " + line);
+            return encode(plate, Integer.parseInt(parts[2].trim()),
+                    LocalDate.parse(parts[3].trim()).toEpochDay(),
+                    toCents(Double.parseDouble(parts[4].trim())), typeCode(parts[0].trim()));
+        }
+
+        @Override
+        public long countRecords(ByteBuffer body) {
+            return body.remaining() / ENTRY_SIZE;
+        }
+
+        @Override
+        public int completeLength(ByteBuffer body) {
+            return body.remaining() - body.remaining() % ENTRY_SIZE;
+        }
+    };
+
+    public static final int ENTRY_SIZE = 21;
+
+    private final String extension;
+    private final String directory;
+
+    RecordFormat(String extension, String directory) {
+        this.extension = extension;
+        this.directory = directory;
+    }
+
+    public String getExtension() { return extension; }
+    public String getDirectory() { return directory; }
+
+    public abstract byte[] encode(RentalRecord record);
+
+    // Re-encodes one CSV record line in this format; throws an unchecked
+    // exception if the line is not a valid record.
+    public abstract byte[] encodeCsv(String line);
+
+    public abstract long countRecords(ByteBuffer body);
+
+    // Length of the body prefix made of whole entries (drops a torn tail).
+    public abstract int completeLength(ByteBuffer body);
+
+    static byte[] encode(int plate, int customerId, long epochDay, long cents, byte type) {
+        ByteBuffer buf = ByteBuffer.allocate(ENTRY_SIZE);
+        buf.putInt(plate).putInt(customerId).putInt(Math.toIntExact(epochDay)).putLong(cents).put(type);
+        return buf.array();
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static byte typeCode(String recordType) {
+        RecordType type = RecordType.parse(recordType);
+        if (type == null) throw new IllegalArgumentException("Unknown record type: " + recordType);
+        return (byte) type.ordinal();
+    }
+}
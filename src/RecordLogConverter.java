@@ -0,0 +1,115 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// One-shot conversion of the CSV rental log (rental_records/) into the BINARY
+// format (rental_records.bin/). Segment numbers and archive placement are kept,
+// and a CSV snapshot position is translated so startup can still skip replay.
+// The CSV segments are left in place; lines that are not valid records are
+// reported and skipped, as loading the CSV log does.
+//
+// The binary log is built in rental_records.bin.tmp/ and renamed into place
+// once complete, so an interrupted conversion leaves no partial log behind
+// and simply runs again on the next start.
+//
+// Usage: java RecordLogConverter [dataDir]
+public class RecordLogConverter {
+
+    public static void main(String[] args) throws IOException {
+        RentalConfig config = RentalConfig.fromSystemProperties();
+        if (args.length > 0) config.setDataDir(Paths.get(args[0]));
+
+        long converted = convertCsvToBinary(config);
+        System.out.println("Converted " + converted + " rental records to " + RecordFormat.BINARY.getDirectory());
+    }
+
+    // Returns the number of records converted.
+    public static long convertCsvToBinary(RentalConfig config) throws IOException {
+        Path targetDir = config.resolve(RecordFormat.BINARY.getDirectory());
+        Path tmpDir = targetDir.resolveSibling(targetDir.getFileName() + ".tmp");
+        if (Files.isDirectory(targetDir)
+                && !new SegmentedRecordLog(targetDir, RecordFormat.BINARY, config).listAll().isEmpty())
+            throw new IOException(targetDir + " already contains segments");
+        deleteTree(tmpDir); // left by an interrupted conversion
+
+        SegmentedRecordLog source = new SegmentedRecordLog(
+                config.resolve(RecordFormat.CSV.getDirectory()), RecordFormat.CSV, config);
+        SegmentedRecordLog target = new SegmentedRecordLog(tmpDir, RecordFormat.BINARY, config);
+
+        Path snapshotPath = config.resolve(RentalSystem.SNAPSHOT_FILE);
+        Snapshot snapshot = null;
+        try {
+            snapshot = Snapshot.read(snapshotPath);
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable snapshot: " + e.getMessage());
+        }
+        boolean remap = snapshot != null && snapshot.getRecordFormat() == RecordFormat.CSV;
+        long snapshotSegment = remap ? snapshot.getRecordsPosition() / SegmentedRecordLog.SEGMENT_SPAN : -1;
+        long snapshotOffset = remap ? snapshot.getRecordsPosition() % SegmentedRecordLog.SEGMENT_SPAN : 0;
+        long remapped = -1;
+
+        List<Path> archived = source.listArchived();
+        List<Path> live = source.listSegments();
+        long total = 0;
+
+        for (int i = 0; i < archived.size() + live.size(); i++) {
+            boolean isArchived = i < archived.size();
+            Path segment = isArchived ? archived.get(i) : live.get(i - archived.size());
+            long index = SegmentedRecordLog.segmentIndex(segment);
+            boolean isOpen = !isArchived && i == archived.size() + live.size() - 1;
+
+            List<String> lines = source.readLines(segment, 0, Long.MAX_VALUE);
+            // the snapshot position counts the lines before it, bad ones included
+            long linesBefore = index == snapshotSegment ? source.readLines(segment, 0, snapshotOffset).size() : -1;
+            long recordsBefore = 0;
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            long records = 0;
+            for (int n = 0; n < lines.size(); n++) {
+                if (n == linesBefore) recordsBefore = records;
+                try {
+                    body.write(RecordFormat.BINARY.encodeCsv(lines.get(n)));
+                    records++;
+                } catch (RuntimeException e) {
+                    System.out.println("Error: bad record at " + segment.getFileName() + " line " + (n + 1)
+                            + ": " + e.getMessage());
+                }
+            }
+            if (linesBefore == lines.size()) recordsBefore = records;
+
+            if (linesBefore >= 0) {
+                remapped = index * SegmentedRecordLog.SEGMENT_SPAN
+                        + SegmentedRecordLog.HEADER_LENGTH + recordsBefore * RecordFormat.ENTRY_SIZE;
+            }
+
+            target.writeSegment(index, body.toByteArray(), !isOpen, isArchived);
+            total += records;
+        }
+
+        // the empty log a RentalSystem may have created is replaced by the converted one
+        deleteTree(targetDir);
+        Files.move(tmpDir, targetDir, StandardCopyOption.ATOMIC_MOVE);
+
+        if (remap && remapped >= 0) {
+            Snapshot translated = snapshot.withRecords(RecordFormat.BINARY, remapped);
+            translated.write(snapshotPath);
+        }
+        return total;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path p : paths) Files.delete(p);
+    }
+}
@@ -0,0 +1,12 @@
+// Kind of rental record. The ordinal is what the columnar history and the
+// binary log store, so new constants must only ever be appended.
+public enum RecordType {
+    RENT, RETURN;
+
+    // Case-insensitive lookup of "RENT"/"RETURN"; returns null for anything else.
+    public static RecordType parse(String name) {
+        if ("RENT".equalsIgnoreCase(name)) return RENT;
+        if ("RETURN".equalsIgnoreCase(name)) return RETURN;
+        return null;
+    }
+}
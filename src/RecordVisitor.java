@@ -0,0 +1,5 @@
+// Receives one rental record as primitives, without a RentalRecord being built.
+@FunctionalInterface
+public interface RecordVisitor {
+    void visit(int packedPlate, int customerId, int epochDay, long cents, byte type);
+}
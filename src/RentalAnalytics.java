@@ -0,0 +1,196 @@
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+// Group-by reports over a RentalHistory. Each query splits the rows into
+// ranges with fork/join; every range builds its own partial aggregate, keyed
+// by packed plate or customer id, and partials are merged pairwise as the
+// tasks join, so workers never share a mutable map. Amounts are in cents.
+public class RentalAnalytics {
+    // Rows per leaf task; smaller histories run on the calling thread.
+    private static final int CHUNK = 1 << 14;
+
+    private final RentalHistory history;
+
+    public RentalAnalytics(RentalHistory history) {
+        this.history = history;
+    }
+
+    // Revenue (rental amounts plus return fees) per vehicle type, e.g. "Car".
+    public Map<String, Long> revenuePerVehicleType(LocalDate from, LocalDate to) {
+        IntObjectMap<long[]> byPlate = revenueBy(from, to, true);
+
+        Map<String, Long> result = new TreeMap<>();
+        byPlate.forEachValue(total -> {
+            Vehicle v = history.vehicle((int) total[1]);
+            String type = v == null ? "Unknown" : v.getTypeName();
+            result.merge(type, total[0], Long::sum);
+        });
+        return result;
+    }
+
+    // Revenue per customer, highest first.
+    public Map<Customer, Long> revenuePerCustomer(LocalDate from, LocalDate to) {
+        IntObjectMap<long[]> byCustomer = revenueBy(from, to, false);
+
+        Map<Customer, Long> unsorted = new LinkedHashMap<>();
+        byCustomer.forEachValue(total -> {
+            Customer c = history.customer((int) total[1]);
+            if (c != null) unsorted.put(c, total[0]);
+        });
+
+        Map<Customer, Long> result = new LinkedHashMap<>();
+        unsorted.entrySet().stream()
+                .sorted(Map.Entry.<Customer, Long>comparingByValue(Comparator.reverseOrder()))
+                .forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    // Fraction of the days from..to (inclusive) each plate spent rented,
+    // from its RENT/RETURN records in log order. A rental still open at the
+    // end of the history counts up to the end of the period.
+    public Map<String, Double> utilizationPerPlate(LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        long end = to.toEpochDay() + 1;
+        if (end <= start) return new TreeMap<>();
+
+        RentalHistory.Columns cols = history.columns();
+        IntObjectMap<Usage> byPlate = aggregate(0, cols.size, IntObjectMap::new,
+                (partial, row) -> {
+                    int plate = cols.plates[row];
+                    Usage usage = partial.get(plate);
+                    if (usage == null) partial.put(plate, usage = new Usage(plate));
+                    usage.add(cols.epochDays[row], cols.types[row] == RecordType.RENT.ordinal(), start, end);
+                },
+                (left, right) -> {
+                    right.forEachValue(r -> {
+                        Usage l = left.get(r.plate);
+                        if (l == null) left.put(r.plate, r);
+                        else l.append(r, start, end);
+                    });
+                    return left;
+                });
+
+        Map<String, Double> result = new TreeMap<>();
+        double days = end - start;
+        byPlate.forEachValue(usage -> {
+            long rented = usage.rentedDays;
+            if (usage.lastRent) rented += overlap(usage.lastDay, end, start, end);
+            result.put(Vehicle.unpackPlate(usage.plate), rented / days);
+        });
+        return result;
+    }
+
+    // Sums cents per plate (byPlate) or per customer id over records in the period.
+    // Each value is {cents, key}.
+    private IntObjectMap<long[]> revenueBy(LocalDate from, LocalDate to, boolean byPlate) {
+        int fromDay = (int) Math.max(from.toEpochDay(), Integer.MIN_VALUE);
+        int toDay = (int) Math.min(to.toEpochDay(), Integer.MAX_VALUE);
+        RentalHistory.Columns cols = history.columns();
+        int[] keys = byPlate ? cols.plates : cols.customerIds;
+
+        return aggregate(0, cols.size, IntObjectMap::new,
+                (partial, row) -> {
+                    int day = cols.epochDays[row];
+                    if (day < fromDay || day > toDay) return;
+                    long[] total = partial.get(keys[row]);
+                    if (total == null) partial.put(keys[row], total = new long[] {0, keys[row]});
+                    total[0] += cols.cents[row];
+                },
+                (left, right) -> {
+                    right.forEachValue(r -> {
+                        long[] l = left.get((int) r[1]);
+                        if (l == null) left.put((int) r[1], r);
+                        else l[0] += r[0];
+                    });
+                    return left;
+                });
+    }
+
+    interface RowAccumulator<A> {
+        void accept(A partial, int row);
+    }
+
+    // Folds rows [from, to) into a partial per leaf and merges the partials in
+    // row order (left before right), so order-sensitive merges stay correct.
+    static <A> A aggregate(int from, int to, Supplier<A> create,
+                           RowAccumulator<A> accumulator, BinaryOperator<A> merge) {
+        return new AggregateTask<>(from, to, create, accumulator, merge).invoke();
+    }
+
+    private static class AggregateTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Supplier<A> create;
+        private final RowAccumulator<A> accumulator;
+        private final BinaryOperator<A> merge;
+
+        AggregateTask(int from, int to, Supplier<A> create, RowAccumulator<A> accumulator, BinaryOperator<A> merge) {
+            this.from = from;
+            this.to = to;
+            this.create = create;
+            this.accumulator = accumulator;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= CHUNK) {
+                A partial = create.get();
+                for (int row = from; row < to; row++) accumulator.accept(partial, row);
+                return partial;
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask<A> left = new AggregateTask<>(from, mid, create, accumulator, merge);
+            left.fork();
+            A right = new AggregateTask<>(mid, to, create, accumulator, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+
+    // Rented days of one plate within a run of consecutive rows. The first and
+    // last events are kept so adjacent runs can be joined: a rental left open
+    // by the earlier run ends at the first event of the later one.
+    private static class Usage {
+        final int plate;
+        long rentedDays;
+        boolean hasEvents;
+        int firstDay;
+        int lastDay;
+        boolean lastRent;
+
+        Usage(int plate) {
+            this.plate = plate;
+        }
+
+        void add(int day, boolean rent, long start, long end) {
+            if (!hasEvents) {
+                hasEvents = true;
+                firstDay = day;
+            } else if (lastRent) {
+                rentedDays += overlap(lastDay, day, start, end);
+            }
+            lastDay = day;
+            lastRent = rent;
+        }
+
+        void append(Usage later, long start, long end) {
+            if (lastRent) rentedDays += overlap(lastDay, later.firstDay, start, end);
+            rentedDays += later.rentedDays;
+            lastDay = later.lastDay;
+            lastRent = later.lastRent;
+        }
+    }
+
+    // Days of [from, to) that fall inside [start, end).
+    private static long overlap(long from, long to, long start, long end) {
+        return Math.max(0, Math.min(to, end) - Math.max(from, start));
+    }
+}
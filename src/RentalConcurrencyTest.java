@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RentalConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    @Test
+    public void testNoDoubleRentals() throws Exception {
+
+        RentalSystem system = RentalSystem.getInstance();
+        Customer customer = new Customer(9001, "Stress Test");
+
+        // vehicles are deliberately not registered, so replay on the next start skips their records
+        Vehicle[] cars = new Vehicle[20];
+        AtomicInteger[] wins = new AtomicInteger[cars.length];
+        for (int i = 0; i < cars.length; i++) {
+            cars[i] = new Car("Test", "Car", 2020, 4);
+            cars[i].setLicensePlate(String.format("QQQ%03d", i));
+            wins[i] = new AtomicInteger();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < cars.length; i++) {
+                    if (system.rentVehicle(cars[i], customer, LocalDate.now(), 100))
+                        wins[i].incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        for (int i = 0; i < cars.length; i++) {
+            assertEquals(1, wins[i].get(), "Vehicle " + cars[i].getLicensePlate() + " rented more than once");
+            assertEquals(Vehicle.VehicleStatus.Rented, cars[i].getStatus());
+        }
+    }
+
+    @Test
+    public void testStatusTransitionsAreAtomic() throws Exception {
+
+        Vehicle car = new Car("Test", "Car", 2020, 4);
+        car.setLicensePlate("QQQ999");
+
+        AtomicInteger rents = new AtomicInteger();
+        AtomicInteger returns = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // exercise the CAS directly so the test doesn't flood the record file
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                for (int n = 0; n < 100_000; n++) {
+                    if (car.compareAndSetStatus(Vehicle.VehicleStatus.Available, Vehicle.VehicleStatus.Rented))
+                        rents.incrementAndGet();
+                    if (car.compareAndSetStatus(Vehicle.VehicleStatus.Rented, Vehicle.VehicleStatus.Available))
+                        returns.incrementAndGet();
+                }
+            }));
+        }
+
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        // every successful return must pair with an earlier successful rent
+        int outstanding = rents.get() - returns.get();
+        assertEquals(car.getStatus() == Vehicle.VehicleStatus.Rented ? 1 : 0, outstanding);
+    }
+}
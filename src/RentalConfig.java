@@ -0,0 +1,155 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Settings for a RentalSystem; each one can be overridden with a
+// -Drental.* system property. The defaults differ from the original app,
+// which appended to rental_records.txt without ever forcing it to disk:
+// every write is fsynced (FSYNC_EACH), and a snapshot plus compaction runs
+// in the background every 10,000 records. The first start on an old data
+// directory moves rental_records.txt and its archives into the segmented
+// log and renames them *.migrated; older versions cannot read the result.
+public class RentalConfig {
+    private Path dataDir = Paths.get(".");
+    private WriteAheadLog.Durability durability = WriteAheadLog.Durability.FSYNC_EACH;
+    private long syncIntervalMs = 50;
+    private long snapshotEvery = 10_000;
+    private long segmentRecords = 100_000;
+    private RecordFormat recordFormat = RecordFormat.CSV;
+    private FleetStorage fleetStorage = FleetStorage.HEAP;
+    private boolean metrics = true;
+    private long metricsDumpMs = 0;
+    private int journalSize = 1024;
+    private List<String> branches = Collections.emptyList();
+    private String branch;
+
+    // Where vehicle attributes and statuses live (see FleetStore).
+    // MAPPED backs the store with fleet.slots in the data directory.
+    public enum FleetStorage { HEAP, DIRECT, MAPPED }
+
+    public static RentalConfig fromSystemProperties() {
+        RentalConfig config = new RentalConfig();
+        config.setDataDir(Paths.get(System.getProperty("rental.dataDir", ".")));
+        config.setDurability(WriteAheadLog.Durability.valueOf(
+                System.getProperty("rental.durability", config.durability.name())));
+        config.setSyncIntervalMs(Long.getLong("rental.syncIntervalMs", config.syncIntervalMs));
+        config.setSnapshotEvery(Long.getLong("rental.snapshotEvery", config.snapshotEvery));
+        config.setSegmentRecords(Long.getLong("rental.segmentRecords", config.segmentRecords));
+        config.setRecordFormat(RecordFormat.valueOf(
+                System.getProperty("rental.recordFormat", config.recordFormat.name())));
+        config.setFleetStorage(FleetStorage.valueOf(
+                System.getProperty("rental.fleetStorage", config.fleetStorage.name())));
+        config.setMetrics(Boolean.parseBoolean(System.getProperty("rental.metrics", String.valueOf(config.metrics))));
+        config.setMetricsDumpMs(Long.getLong("rental.metricsDumpMs", config.metricsDumpMs));
+        config.setJournalSize(Integer.getInteger("rental.journalSize", config.journalSize));
+        String branches = System.getProperty("rental.branches", "").trim();
+        if (!branches.isEmpty()) config.setBranches(branches.split("\\s*,\\s*"));
+        return config;
+    }
+
+    // The settings of one branch of a ShardedRentalSystem: the same, with the
+    // data directory <dataDir>/branches/<branch>.
+    RentalConfig forBranch(String branch) {
+        checkBranchName(branch);
+        RentalConfig config = new RentalConfig();
+        config.dataDir = dataDir.resolve("branches").resolve(branch);
+        config.durability = durability;
+        config.syncIntervalMs = syncIntervalMs;
+        config.snapshotEvery = snapshotEvery;
+        config.segmentRecords = segmentRecords;
+        config.recordFormat = recordFormat;
+        config.fleetStorage = fleetStorage;
+        config.metrics = metrics;
+        config.metricsDumpMs = metricsDumpMs;
+        config.journalSize = journalSize;
+        config.branch = branch;
+        return config;
+    }
+
+    public Path getDataDir() { return dataDir; }
+    public WriteAheadLog.Durability getDurability() { return durability; }
+    public long getSyncIntervalMs() { return syncIntervalMs; }
+    public long getSnapshotEvery() { return snapshotEvery; }
+    public long getSegmentRecords() { return segmentRecords; }
+    public RecordFormat getRecordFormat() { return recordFormat; }
+    public FleetStorage getFleetStorage() { return fleetStorage; }
+    public boolean isMetrics() { return metrics; }
+    public long getMetricsDumpMs() { return metricsDumpMs; }
+    public int getJournalSize() { return journalSize; }
+    public List<String> getBranches() { return branches; }
+    public String getBranch() { return branch; }
+
+    public Path resolve(String fileName) {
+        return dataDir.resolve(fileName);
+    }
+
+    public void setDataDir(Path dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public void setDurability(WriteAheadLog.Durability durability) {
+        this.durability = durability;
+    }
+
+    public void setSyncIntervalMs(long syncIntervalMs) {
+        if (syncIntervalMs <= 0) throw new IllegalArgumentException("Sync interval must be > 0");
+        this.syncIntervalMs = syncIntervalMs;
+    }
+
+    // Number of rental records between automatic snapshot + compaction runs; 0 disables them.
+    public void setSnapshotEvery(long snapshotEvery) {
+        if (snapshotEvery < 0) throw new IllegalArgumentException("Snapshot interval must be >= 0");
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // Number of records after which a rental log segment is sealed.
+    public void setSegmentRecords(long segmentRecords) {
+        if (segmentRecords <= 0) throw new IllegalArgumentException("Segment size must be > 0");
+        this.segmentRecords = segmentRecords;
+    }
+
+    public void setRecordFormat(RecordFormat recordFormat) {
+        this.recordFormat = recordFormat;
+    }
+
+    public void setFleetStorage(FleetStorage fleetStorage) {
+        this.fleetStorage = fleetStorage;
+    }
+
+    // Latency timers (see RentalMetrics); counters are always kept.
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    // How often the metrics table is printed to System.out; 0 never prints it.
+    public void setMetricsDumpMs(long metricsDumpMs) {
+        if (metricsDumpMs < 0) throw new IllegalArgumentException("Metrics dump interval must be >= 0");
+        this.metricsDumpMs = metricsDumpMs;
+    }
+
+    // Slots in the event journal (see EventJournal); writers block while it is full.
+    public void setJournalSize(int journalSize) {
+        if (journalSize <= 0 || Integer.bitCount(journalSize) != 1)
+            throw new IllegalArgumentException("Journal size must be a power of two");
+        this.journalSize = journalSize;
+    }
+
+    // Branch names for ShardedRentalSystem; letters, digits, '-' and '_' only,
+    // since each names a data directory.
+    public void setBranches(String... branches) {
+        List<String> names = new ArrayList<>();
+        for (String name : branches) {
+            checkBranchName(name);
+            if (names.contains(name)) throw new IllegalArgumentException("Duplicate branch name: " + name);
+            names.add(name);
+        }
+        this.branches = Collections.unmodifiableList(names);
+    }
+
+    private static void checkBranchName(String name) {
+        if (name == null || !name.matches("[A-Za-z0-9_-]+"))
+            throw new IllegalArgumentException("Invalid branch name: " + name);
+    }
+}
@@ -0,0 +1,18 @@
+// A slot of the rental journal: a change published by RentalSystem for its
+// persistence, history and metrics stages. Slots are reused, so handlers
+// copy what they keep.
+final class RentalEvent {
+    enum Kind { RECORD, VEHICLE, CUSTOMER }
+
+    Kind kind;
+    RentalRecord record;   // RECORD
+    String line;           // VEHICLE / CUSTOMER: the data file line
+    long publishedAt;      // RentalMetrics.start() when published
+
+    void set(Kind kind, RentalRecord record, String line, long publishedAt) {
+        this.kind = kind;
+        this.record = record;
+        this.line = line;
+        this.publishedAt = publishedAt;
+    }
+}
@@ -1,34 +1,554 @@
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+// Rental records stored column by column: packed plate, customer id, epoch
+// day, amount in cents and RecordType ordinal, one primitive array each.
+// Vehicles, customers and customer names are looked up in tables, shared with
+// the owning RentalSystem or kept by the history itself, and RentalRecord
+// objects are only built when a caller asks for one. Per-vehicle and
+// per-customer posting lists hold the row numbers of each key's records.
+// Rows are also partitioned by calendar month of the record date for range
+// queries.
 public class RentalHistory {
-    private List<RentalRecord> rentalRecords = new ArrayList<>();
+    private static final RecordType[] TYPES = RecordType.values();
+
+    private int[] plates = new int[16];
+    private int[] customerIds = new int[16];
+    private int[] epochDays = new int[16];
+    private long[] cents = new long[16];
+    private byte[] types = new byte[16];
+    private int size;
+
+    private final ConcurrentIntObjectMap<Vehicle> vehiclesByPlate;
+    private final ConcurrentIntObjectMap<Customer> customersById;
+    private final TrigramIndex customerNames;
+    private final boolean ownsTables;  // added records fill the tables
+
+    private IntObjectMap<Postings> rowsByPlate = new IntObjectMap<>();
+    private IntObjectMap<Postings> rowsByCustomer = new IntObjectMap<>();
+
+    // keyed by year * 12 + month - 1
+    private NavigableMap<Integer, Partition> partitions = new TreeMap<>();
+    private int frozenBefore = Integer.MIN_VALUE;
+    private int lastDay = Integer.MIN_VALUE;
+    private int lastMonth;
+
+    // Guards the columns and indexes; appends are exclusive, queries run in parallel.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // A history with tables of its own, filled from the records added.
+    public RentalHistory() {
+        this(new ConcurrentIntObjectMap<>(), new ConcurrentIntObjectMap<>(), new TrigramIndex(), true);
+    }
+
+    // A history that reads the owner's tables, which must hold the vehicle and
+    // customer of every record added.
+    RentalHistory(ConcurrentIntObjectMap<Vehicle> vehiclesByPlate, ConcurrentIntObjectMap<Customer> customersById,
+                  TrigramIndex customerNames) {
+        this(vehiclesByPlate, customersById, customerNames, false);
+    }
+
+    private RentalHistory(ConcurrentIntObjectMap<Vehicle> vehiclesByPlate,
+                          ConcurrentIntObjectMap<Customer> customersById, TrigramIndex customerNames,
+                          boolean ownsTables) {
+        this.vehiclesByPlate = vehiclesByPlate;
+        this.customersById = customersById;
+        this.customerNames = customerNames;
+        this.ownsTables = ownsTables;
+    }
 
     public void addRecord(RentalRecord record) {
-        rentalRecords.add(record);
+        RecordType type = RecordType.parse(record.getRecordType());
+        if (type == null) throw new IllegalArgumentException("Unknown record type: " + record.getRecordType());
+        add(record.getVehicle(), record.getCustomer(), (int) record.getRecordDate().toEpochDay(),
+                RecordFormat.toCents(record.getTotalAmount()), type);
+    }
+
+    public void add(Vehicle vehicle, Customer customer, int epochDay, long amountCents, RecordType type) {
+        lock.writeLock().lock();
+        try {
+            append(vehicle, customer, epochDay, amountCents, type);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends every record of another history, keeping its order.
+    public void addAll(RentalHistory other) {
+        if (other == this) throw new IllegalArgumentException("Cannot add a history to itself");
+        lock.writeLock().lock();
+        other.lock.readLock().lock();
+        try {
+            int start = size;
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.plates, 0, plates, size, other.size);
+            System.arraycopy(other.customerIds, 0, customerIds, size, other.size);
+            System.arraycopy(other.epochDays, 0, epochDays, size, other.size);
+            System.arraycopy(other.cents, 0, cents, size, other.size);
+            System.arraycopy(other.types, 0, types, size, other.size);
+            size += other.size;
+            for (int row = start; row < size; row++) index(row);
+            if (ownsTables) {
+                other.vehiclesByPlate.forEachValue(v -> vehiclesByPlate.putIfAbsent(v.getPackedPlate(), v));
+                other.customersById.forEachValue(this::addCustomer);
+            }
+        } finally {
+            other.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
     }
 
+    // Inserts older records ahead of everything already held.
+    public void prependAll(RentalHistory older) {
+        lock.writeLock().lock();
+        older.lock.readLock().lock();
+        try {
+            int n = older.size;
+            int capacity = Math.max(16, size + n);
+            plates = concat(older.plates, n, plates, size, new int[capacity]);
+            customerIds = concat(older.customerIds, n, customerIds, size, new int[capacity]);
+            epochDays = concat(older.epochDays, n, epochDays, size, new int[capacity]);
+            cents = concat(older.cents, n, cents, size, new long[capacity]);
+            types = concat(older.types, n, types, size, new byte[capacity]);
+            size += n;
+
+            // every row number moved, so the posting lists and partitions are rebuilt
+            rowsByPlate = new IntObjectMap<>();
+            rowsByCustomer = new IntObjectMap<>();
+            partitions = new TreeMap<>();
+            for (int row = 0; row < size; row++) index(row);
+            freeze(frozenBefore);
+
+            if (ownsTables) {
+                older.vehiclesByPlate.forEachValue(v -> vehiclesByPlate.putIfAbsent(v.getPackedPlate(), v));
+                older.customersById.forEachValue(this::addCustomer);
+            }
+        } finally {
+            older.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Read-only view of every record at the time of the call. Records are
+    // built on access, so iterating does not hold onto the whole history.
     public List<RentalRecord> getRentalHistory() {
-        return rentalRecords;
+        lock.readLock().lock();
+        try {
+            return new RecordView(null, size);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    // Records of every customer whose name contains the given text, in log order.
     public List<RentalRecord> getRentalRecordsByCustomer(String customerName) {
-        List<RentalRecord> result = new ArrayList<>();
-        for (RentalRecord record : rentalRecords) {
-            if (record.getCustomer().toString().toLowerCase().contains(customerName.toLowerCase())) {
-                result.add(record);
+        lock.readLock().lock();
+        try {
+            int[] ids = customerNames.find(customerName);
+            if (ids.length == 1) {
+                Postings rows = rowsByCustomer.get(ids[0]);
+                return rows == null ? Collections.<RentalRecord>emptyList() : new RecordView(rows.rows, rows.size);
             }
+
+            int total = 0;
+            for (int id : ids) {
+                Postings rows = rowsByCustomer.get(id);
+                if (rows != null) total += rows.size;
+            }
+            if (total == 0) return Collections.emptyList();
+
+            int[] merged = new int[total];
+            int n = 0;
+            for (int id : ids) {
+                Postings rows = rowsByCustomer.get(id);
+                if (rows == null) continue;
+                System.arraycopy(rows.rows, 0, merged, n, rows.size);
+                n += rows.size;
+            }
+            Arrays.sort(merged);
+            return new RecordView(merged, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<RentalRecord> getRentalRecordsByCustomer(int customerId) {
+        lock.readLock().lock();
+        try {
+            Postings rows = rowsByCustomer.get(customerId);
+            return rows == null ? Collections.<RentalRecord>emptyList() : new RecordView(rows.rows, rows.size);
+        } finally {
+            lock.readLock().unlock();
         }
-        return result;
     }
 
     public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate) {
-        List<RentalRecord> result = new ArrayList<>();
-        for (RentalRecord record : rentalRecords) {
-            if (record.getVehicle().getLicensePlate().equalsIgnoreCase(licensePlate)) {
-                result.add(record);
+        int plate = Vehicle.packPlate(licensePlate);
+        if (plate < 0) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            Postings rows = rowsByPlate.get(plate);
+            return rows == null ? Collections.<RentalRecord>emptyList() : new RecordView(rows.rows, rows.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to) {
+        return getRentalRecordsBetween(from, to, null);
+    }
+
+    // Records dated from..to (both inclusive), optionally only of one type, in
+    // log order. Only the month partitions overlapping the range are read.
+    public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to, RecordType type) {
+        if (from.isAfter(to)) return Collections.emptyList();
+        // epoch days are stored as ints; clamp open-ended ranges such as LocalDate.MIN
+        int fromDay = (int) Math.max(from.toEpochDay(), Integer.MIN_VALUE);
+        int toDay = (int) Math.min(to.toEpochDay(), Integer.MAX_VALUE);
+        int typeCode = type == null ? -1 : type.ordinal();
+
+        lock.readLock().lock();
+        try {
+            Postings matches = new Postings();
+            for (Partition month : partitions.subMap(monthKey(from), true, monthKey(to), true).values())
+                month.collect(fromDay, toDay, typeCode, epochDays, types, matches);
+            if (matches.size == 0) return Collections.emptyList();
+
+            Arrays.sort(matches.rows, 0, matches.size);
+            return new RecordView(matches.rows, matches.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Cursor over the records matching the filter (null for all), in log
+    // order: visits up to limit of them starting at row from, and returns the
+    // row the next call should start at, or -1 if no match is left. A vehicle
+    // or customer filter walks that key's posting list; otherwise the columns
+    // are scanned. The lock is only held to capture the arrays.
+    public int scan(RecordFilter filter, int from, int limit, RecordVisitor visitor) {
+        if (filter == null) filter = new RecordFilter();
+        int plate = -1;
+        if (filter.getLicensePlate() != null) {
+            plate = Vehicle.packPlate(filter.getLicensePlate());
+            if (plate < 0) return -1;
+        }
+        Integer customerId = filter.getCustomerId();
+        int fromDay = filter.getFrom() == null ? Integer.MIN_VALUE
+                : (int) Math.max(filter.getFrom().toEpochDay(), Integer.MIN_VALUE);
+        int toDay = filter.getTo() == null ? Integer.MAX_VALUE
+                : (int) Math.min(filter.getTo().toEpochDay(), Integer.MAX_VALUE);
+        int typeCode = filter.getType() == null ? -1 : filter.getType().ordinal();
+        boolean byCustomer = customerId != null;
+        int customer = byCustomer ? customerId : 0;
+
+        Columns c;
+        int[] rows = null;
+        int count;
+        lock.readLock().lock();
+        try {
+            c = new Columns(plates, customerIds, epochDays, cents, types, size);
+            count = size;
+            if (plate >= 0 || byCustomer) {
+                Postings keyed = plate >= 0 ? rowsByPlate.get(plate) : rowsByCustomer.get(customer);
+                if (keyed == null) return -1;
+                rows = keyed.rows;
+                count = keyed.size;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int visited = 0;
+        for (int i = rows == null ? from : firstAtOrAfter(rows, count, from); i < count; i++) {
+            int row = rows == null ? i : rows[i];
+            if (c.epochDays[row] < fromDay || c.epochDays[row] > toDay
+                    || (typeCode >= 0 && c.types[row] != typeCode)
+                    || (byCustomer && c.customerIds[row] != customer))
+                continue;
+            if (visited == limit) return row;
+            visitor.visit(c.plates[row], c.customerIds[row], c.epochDays[row], c.cents[row], c.types[row]);
+            visited++;
+        }
+        return -1;
+    }
+
+    // Freezes every month partition before the month of the given date: its
+    // rows are sorted by day into an exact-size array that is never written
+    // again, so range queries binary-search it instead of filtering. A record
+    // added later for a frozen month starts a new open partition from a copy.
+    public void freezeBefore(LocalDate date) {
+        lock.writeLock().lock();
+        try {
+            frozenBefore = Math.max(frozenBefore, monthKey(date));
+            freeze(frozenBefore);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Column access for loaders and reports; callers must stay below size().
+    public Vehicle vehicleAt(int i)      { return vehicle(plates[i]); }
+    public int customerIdAt(int i)       { return customerIds[i]; }
+    public int epochDayAt(int i)         { return epochDays[i]; }
+    public long centsAt(int i)           { return cents[i]; }
+    public RecordType typeAt(int i)      { return TYPES[types[i]]; }
+
+    Vehicle vehicle(int plate) {
+        return vehiclesByPlate.get(plate);
+    }
+
+    Customer customer(int customerId) {
+        return customersById.get(customerId);
+    }
+
+    // The columns as they are now, for bulk readers such as RentalAnalytics.
+    // Rows below the captured size never change, so no lock is needed to read them.
+    Columns columns() {
+        lock.readLock().lock();
+        try {
+            return new Columns(plates, customerIds, epochDays, cents, types, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock.
+    private void append(Vehicle vehicle, Customer customer, int epochDay, long amountCents, RecordType type) {
+        int plate = vehicle.getPackedPlate();
+        if (ownsTables) {
+            vehiclesByPlate.putIfAbsent(plate, vehicle);
+            addCustomer(customer);
+        }
+
+        ensureCapacity(size + 1);
+        plates[size] = plate;
+        customerIds[size] = customer.getCustomerId();
+        epochDays[size] = epochDay;
+        cents[size] = amountCents;
+        types[size] = (byte) type.ordinal();
+        index(size);
+        size++;
+    }
+
+    // Caller holds the write lock; only for a history that owns its tables.
+    private void addCustomer(Customer customer) {
+        if (customersById.putIfAbsent(customer.getCustomerId(), customer) == null)
+            customerNames.add(customer.getCustomerId(), customer.getCustomerName());
+    }
+
+    // Caller holds the write lock.
+    private void freeze(int beforeMonth) {
+        for (Map.Entry<Integer, Partition> e : partitions.headMap(beforeMonth, false).entrySet()) {
+            if (!e.getValue().isFrozen())
+                e.setValue(e.getValue().frozen(epochDays));
+        }
+    }
+
+    private static int monthKey(LocalDate date) {
+        long key = date.getYear() * 12L + date.getMonthValue() - 1;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, key));
+    }
+
+    // Caller holds the write lock.
+    private void index(int row) {
+        Postings byPlate = rowsByPlate.get(plates[row]);
+        if (byPlate == null) rowsByPlate.put(plates[row], byPlate = new Postings());
+        byPlate.add(row);
+
+        Postings byCustomer = rowsByCustomer.get(customerIds[row]);
+        if (byCustomer == null) rowsByCustomer.put(customerIds[row], byCustomer = new Postings());
+        byCustomer.add(row);
+
+        // records usually arrive in date order, so the month is rarely recomputed
+        if (epochDays[row] != lastDay) {
+            lastDay = epochDays[row];
+            lastMonth = monthKey(LocalDate.ofEpochDay(lastDay));
+        }
+        Partition month = partitions.get(lastMonth);
+        if (month == null || month.isFrozen())
+            partitions.put(lastMonth, month = month == null ? new Partition() : month.thawed());
+        month.add(row);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= plates.length) return;
+        int capacity = Math.max(needed, plates.length + (plates.length >> 1));
+        plates = Arrays.copyOf(plates, capacity);
+        customerIds = Arrays.copyOf(customerIds, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        types = Arrays.copyOf(types, capacity);
+    }
+
+    // Index of the first entry of the ascending rows[0, count) that is >= row.
+    private static int firstAtOrAfter(int[] rows, int count, int row) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rows[mid] < row) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static <A> A concat(A first, int firstLength, A second, int secondLength, A into) {
+        System.arraycopy(first, 0, into, 0, firstLength);
+        System.arraycopy(second, 0, into, firstLength, secondLength);
+        return into;
+    }
+
+    static class Columns {
+        final int[] plates;
+        final int[] customerIds;
+        final int[] epochDays;
+        final long[] cents;
+        final byte[] types;
+        final int size;
+
+        Columns(int[] plates, int[] customerIds, int[] epochDays, long[] cents, byte[] types, int size) {
+            this.plates = plates;
+            this.customerIds = customerIds;
+            this.epochDays = epochDays;
+            this.cents = cents;
+            this.types = types;
+            this.size = size;
+        }
+    }
+
+    // Growable list of row numbers, ascending. Like the columns, it is only
+    // ever written past its current size or replaced by a larger copy.
+    private static class Postings {
+        int[] rows = new int[4];
+        int size;
+
+        void add(int row) {
+            if (size == rows.length) rows = Arrays.copyOf(rows, size << 1);
+            rows[size++] = row;
+        }
+    }
+
+    // The rows of one calendar month. An open partition is filtered row by
+    // row; a frozen one is sorted by day, with the days copied alongside for
+    // binary search, and is replaced rather than changed.
+    private static class Partition extends Postings {
+        int[] days;
+
+        boolean isFrozen() {
+            return days != null;
+        }
+
+        Partition frozen(int[] epochDays) {
+            long[] byDay = new long[size];
+            for (int i = 0; i < size; i++)
+                byDay[i] = (long) epochDays[rows[i]] << 32 | rows[i];
+            Arrays.sort(byDay);
+
+            Partition frozen = new Partition();
+            frozen.rows = new int[size];
+            frozen.days = new int[size];
+            frozen.size = size;
+            for (int i = 0; i < size; i++) {
+                frozen.rows[i] = (int) byDay[i];
+                frozen.days[i] = (int) (byDay[i] >> 32);
+            }
+            return frozen;
+        }
+
+        Partition thawed() {
+            Partition open = new Partition();
+            open.rows = Arrays.copyOf(rows, Math.max(4, size << 1));
+            open.size = size;
+            return open;
+        }
+
+        // Caller holds the history's read lock. typeCode < 0 matches every type.
+        void collect(int fromDay, int toDay, int typeCode, int[] epochDays, byte[] types, Postings out) {
+            if (isFrozen()) {
+                for (int i = firstOnOrAfter(fromDay); i < size && days[i] <= toDay; i++) {
+                    if (typeCode < 0 || types[rows[i]] == typeCode) out.add(rows[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                if (epochDays[row] >= fromDay && epochDays[row] <= toDay
+                        && (typeCode < 0 || types[row] == typeCode))
+                    out.add(row);
+            }
+        }
+
+        private int firstOnOrAfter(int day) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (days[mid] < day) lo = mid + 1;
+                else hi = mid;
             }
+            return lo;
+        }
+    }
+
+    // Appends only write past the captured size and growth/prepend swap in new
+    // arrays, so the captured columns and rows never change under the view.
+    // With rows == null the view covers every record.
+    private class RecordView extends AbstractList<RentalRecord> implements RandomAccess {
+        private final int[] plates = RentalHistory.this.plates;
+        private final int[] customerIds = RentalHistory.this.customerIds;
+        private final int[] epochDays = RentalHistory.this.epochDays;
+        private final long[] cents = RentalHistory.this.cents;
+        private final byte[] types = RentalHistory.this.types;
+        private final int[] rows;
+        private final int size;
+
+        RecordView(int[] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public RentalRecord get(int i) {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+            if (rows != null) i = rows[i];
+            Vehicle v;
+            Customer c;
+            lock.readLock().lock();
+            try {
+                v = vehicle(plates[i]);
+                c = customer(customerIds[i]);
+            } finally {
+                lock.readLock().unlock();
+            }
+            return new RentalRecord(v, c, LocalDate.ofEpochDay(epochDays[i]), cents[i] / 100.0,
+                    TYPES[types[i]].name());
+        }
+
+        @Override
+        public int size() {
+            return size;
         }
-        return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,244 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Latency histograms and counters for a RentalSystem.
+//
+// Overhead budget: timing a call costs two System.nanoTime() reads and one
+// LatencyHistogram.record, 30-150 ns depending on the clock source. That is
+// noise next to a logged rent or return (tens of microseconds) or any save or
+// load step, so those are timed on every call. Plate and ID lookups take
+// about as long as the timing itself, so only one in getLookupSampling()
+// of them is timed; the interval is calibrated on startup to keep their
+// average cost under LOOKUP_BUDGET_NS. Counters are LongAdders.
+//
+// With -Drental.metrics=false every timer is skipped; the counters still count.
+public final class RentalMetrics implements RentalMetricsMBean {
+    static final long LOOKUP_BUDGET_NS = 5;
+    private static final int MAX_SAMPLING = 1024;
+
+    private final boolean enabled;
+    private final int lookupSampling; // a power of two
+    private final List<LatencyHistogram> histograms = new ArrayList<>();
+
+    final LatencyHistogram rentVehicle = histogram("rentVehicle");
+    final LatencyHistogram returnVehicle = histogram("returnVehicle");
+    final LatencyHistogram findVehicleByPlate = histogram("findVehicleByPlate");
+    final LatencyHistogram findCustomerById = histogram("findCustomerById");
+    final LatencyHistogram findCustomersByName = histogram("findCustomersByName");
+    final LatencyHistogram searchVehicles = histogram("searchVehicles");
+    final LatencyHistogram findFreeVehicles = histogram("findFreeVehicles");
+    final LatencyHistogram recordsBetween = histogram("recordsBetween");
+    final LatencyHistogram recordsByCustomer = histogram("recordsByCustomer");
+    final LatencyHistogram saveVehicle = histogram("saveVehicle");
+    final LatencyHistogram saveCustomer = histogram("saveCustomer");
+    final LatencyHistogram saveRecord = histogram("saveRecord");
+    final LatencyHistogram saveReservation = histogram("saveReservation");
+    final LatencyHistogram snapshot = histogram("snapshot");
+    final LatencyHistogram loadSnapshot = histogram("loadSnapshot");
+    final LatencyHistogram loadVehicles = histogram("loadVehicles");
+    final LatencyHistogram loadCustomers = histogram("loadCustomers");
+    final LatencyHistogram loadRentalRecords = histogram("loadRentalRecords");
+    final LatencyHistogram loadReservations = histogram("loadReservations");
+    final LatencyHistogram journal = histogram("journal");
+
+    private final LongAdder rejectedRents = new LongAdder();
+    private final LongAdder rejectedReturns = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+    private final LongAdder loadErrors = new LongAdder();
+    private final LongAdder journalEvents = new LongAdder();
+    private final LongAdder journalBatches = new LongAdder();
+    private volatile String lastError = "";
+
+    private ScheduledExecutorService dumper;
+
+    public RentalMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.lookupSampling = enabled ? calibrateSampling() : 0;
+    }
+
+    private LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(histograms);
+    }
+
+    // TIMING
+    // long start = metrics.start(); ...; metrics.stop(metrics.saveRecord, start);
+
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // 0 when this lookup is not sampled.
+    long startLookup() {
+        if (!enabled || (ThreadLocalRandom.current().nextInt() & (lookupSampling - 1)) != 0) return 0;
+        return System.nanoTime();
+    }
+
+    void stop(LatencyHistogram histogram, long start) {
+        if (start != 0) histogram.record(System.nanoTime() - start);
+    }
+
+    // COUNTERS
+
+    void rentRejected() {
+        rejectedRents.increment();
+    }
+
+    void returnRejected() {
+        rejectedReturns.increment();
+    }
+
+    void writeError(String message) {
+        writeErrors.increment();
+        lastError = message;
+    }
+
+    void loadError(String message) {
+        loadErrors.increment();
+        lastError = message;
+    }
+
+    // One event through the whole journal; publishedAt is its start() time.
+    void journalEvent(long publishedAt, boolean endOfBatch) {
+        stop(journal, publishedAt);
+        journalEvents.increment();
+        if (endOfBatch) journalBatches.increment();
+    }
+
+    @Override
+    public long getRejectedRents() {
+        return rejectedRents.sum();
+    }
+
+    @Override
+    public long getRejectedReturns() {
+        return rejectedReturns.sum();
+    }
+
+    @Override
+    public long getWriteErrors() {
+        return writeErrors.sum();
+    }
+
+    @Override
+    public long getLoadErrors() {
+        return loadErrors.sum();
+    }
+
+    @Override
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public long getJournalEvents() {
+        return journalEvents.sum();
+    }
+
+    @Override
+    public long getJournalBatches() {
+        return journalBatches.sum();
+    }
+
+    @Override
+    public int getLookupSampling() {
+        return lookupSampling;
+    }
+
+    // REPORTING
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(LatencyHistogram.summaryHeader()).append('\n');
+        for (LatencyHistogram h : histograms) {
+            if (h.getCount() > 0) out.append(h.summary()).append('\n');
+        }
+        out.append("lookups timed 1 in ").append(lookupSampling)
+           .append(", rejected rents ").append(getRejectedRents())
+           .append(", rejected returns ").append(getRejectedReturns())
+           .append(", write errors ").append(getWriteErrors())
+           .append(", load errors ").append(getLoadErrors())
+           .append(", journal events ").append(getJournalEvents())
+           .append(" in ").append(getJournalBatches()).append(" batches");
+        if (!lastError.isEmpty()) out.append(", last error: ").append(lastError);
+        return out.append('\n').toString();
+    }
+
+    // Registers this bean as rental:type=Metrics and each histogram as
+    // rental:type=Latency,name=<operation>, replacing earlier registrations.
+    // A branch of a ShardedRentalSystem adds ",branch=<branch>" to both.
+    public void registerMBeans(String branch) {
+        String suffix = branch == null ? "" : ",branch=" + branch;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName("rental:type=Metrics" + suffix), this);
+            for (LatencyHistogram h : histograms)
+                register(server, new ObjectName("rental:type=Latency,name=" + h.getName() + suffix), h);
+        } catch (JMException e) {
+            System.out.println("Error registering metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        if (server.isRegistered(name)) server.unregisterMBean(name);
+        server.registerMBean(bean, name);
+    }
+
+    // Prints dump() to System.out every intervalMs from a daemon thread.
+    public synchronized void startDump(long intervalMs) {
+        if (dumper != null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rental-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.print(dump()), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dumper == null) return;
+        dumper.shutdownNow();
+        dumper = null;
+    }
+
+    // Times a batch of timed records into a scratch histogram and returns the
+    // smallest power-of-two interval that keeps the average under the budget.
+    private static int calibrateSampling() {
+        LatencyHistogram scratch = new LatencyHistogram("calibration");
+        int rounds = 20_000;
+        long best = Long.MAX_VALUE;
+        for (int pass = 0; pass < 3; pass++) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                scratch.record(System.nanoTime() - start);
+            }
+            best = Math.min(best, (System.nanoTime() - begin) / rounds);
+        }
+
+        int sampling = 1;
+        while (sampling < MAX_SAMPLING && best / sampling > LOOKUP_BUDGET_NS) sampling <<= 1;
+        return sampling;
+    }
+}
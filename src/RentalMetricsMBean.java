@@ -0,0 +1,15 @@
+// JMX view of a RentalSystem's counters; latencies are separate
+// LatencyHistogramMBeans, one per operation.
+public interface RentalMetricsMBean {
+    long getRejectedRents();
+    long getRejectedReturns();
+    long getWriteErrors();
+    long getLoadErrors();
+    String getLastError();
+    long getJournalEvents();
+    long getJournalBatches();
+    int getLookupSampling();
+
+    // The text table printed by the periodic dump.
+    String dump();
+}
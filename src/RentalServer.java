@@ -0,0 +1,501 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Line-protocol network front end for a RentalSystem, so many terminals can
+// share one process. One selector thread accepts connections and reads
+// requests; a pool of workers executes them, since rents and returns block
+// until their record is durable.
+//
+// Pipelining: a client may send any number of requests without waiting.
+// Each connection's requests run one at a time, in order, and responses come
+// back in request order. Whatever has arrived by the time a worker picks the
+// connection up runs as one batch, and the batch's responses go out in one
+// write. A client that stops reading its responses is not read from until
+// they drain.
+//
+// Requests are single lines, responses are "OK ..." or "ERR <reason>":
+//   PING                                        OK PONG
+//   ADD_VEHICLE <vehicles.txt line>             OK
+//   ADD_CUSTOMER <id>,<name>                    OK
+//   RENT <plate> <customerId> <date> <amount>   OK
+//   RETURN <plate> <customerId> <date> <fees>   OK
+//   VEHICLE <plate>                             OK <status> <vehicles.txt line>
+//   COUNT <status>                              OK <count>
+//   VEHICLES <status|ALL> <pageSize> [token]    OK <n> <nextToken|->, then n vehicles.txt lines
+//   HISTORY <pageSize> [token|-] [plate=P] [customer=ID] [from=D] [to=D] [type=T]
+//                                               OK <n> <nextToken|->, then n CSV export rows
+//   QUIT                                        OK BYE, then the server closes the connection
+public final class RentalServer implements Closeable {
+    private static final int MAX_LINE = 16 * 1024;
+    private static final int MAX_QUEUED = 4096;          // requests read but not yet run
+    private static final int MAX_PENDING = 1 << 20;      // response bytes not yet written
+
+    private final RentalSystem system;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    // Binds to the address (port 0 picks a free one) and starts serving.
+    public RentalServer(RentalSystem system, InetSocketAddress address, int workerThreads) throws IOException {
+        this.system = system;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "rental-server-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.loop = new Thread(this::run, "rental-server");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    // Blocks until the server is closed.
+    public void join() throws InterruptedException {
+        loop.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // java RentalServer [port]; the port defaults to -Drental.port or 7070 and
+    // the worker count to -Drental.serverThreads or 16.
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("rental.port", 7070);
+        int threads = Integer.getInteger("rental.serverThreads", 16);
+        RentalServer server = new RentalServer(RentalSystem.getInstance(), new InetSocketAddress(port), threads);
+        System.out.println("Rental server listening on port " + server.getPort());
+        server.join();
+    }
+
+    // SELECTOR LOOP
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (Runnable task; (task = selectorTasks.poll()) != null; ) task.run();
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    if (key.isWritable()) c.writePending();
+                    if (key.isValid() && key.isReadable()) c.read();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error in rental server: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) closeQuietly(key.channel());
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection c = new Connection(channel);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        }
+    }
+
+    // Runs on the selector thread at its next wakeup.
+    private void onSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    // Response bytes a connection has not written yet, in write mode.
+    private static final class Output extends OutputStream {
+        private ByteBuffer bytes = ByteBuffer.allocate(8 * 1024);
+
+        @Override
+        public synchronized void write(int b) {
+            ensure(1);
+            bytes.put((byte) b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            ensure(len);
+            bytes.put(b, off, len);
+        }
+
+        // Writes what the channel takes; true once nothing is left.
+        synchronized boolean drainTo(SocketChannel channel) throws IOException {
+            bytes.flip();
+            try {
+                channel.write(bytes);
+                return !bytes.hasRemaining();
+            } finally {
+                bytes.compact();
+            }
+        }
+
+        synchronized int pending() {
+            return bytes.position();
+        }
+
+        private void ensure(int n) {
+            if (bytes.remaining() >= n) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + n));
+            bytes.flip();
+            bigger.put(bytes);
+            bytes = bigger;
+        }
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+
+        // selector thread only
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+
+        // guarded by this
+        final ArrayDeque<String> requests = new ArrayDeque<>();
+        boolean busy;       // a worker owns the connection
+        boolean closing;    // QUIT seen or the client went away
+
+        // the busy worker formats responses; it and the selector thread both
+        // write them out, in order, through the synchronized Output
+        final Output output = new Output();
+        final RowWriter out = RowWriter.of(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Selector thread: reads what is available and queues complete lines.
+        void read() {
+            int n;
+            try {
+                n = channel.read(in);
+            } catch (IOException e) {
+                n = -1;
+            }
+            if (n < 0) {
+                close();
+                return;
+            }
+
+            boolean queued = false;
+            int start = 0;
+            synchronized (this) {
+                for (int i = 0; i < in.position(); i++) {
+                    if (in.get(i) != '\n') continue;
+                    int end = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+                    if (end > start)
+                        requests.add(new String(in.array(), start, end - start, StandardCharsets.UTF_8));
+                    start = i + 1;
+                }
+                if (!requests.isEmpty() && !busy) {
+                    busy = true;
+                    queued = true;
+                }
+            }
+            in.flip();
+            in.position(start);
+            in.compact();
+
+            if (!in.hasRemaining()) {
+                System.out.println("Closing rental server connection: request longer than " + MAX_LINE + " bytes");
+                close();
+                return;
+            }
+            if (queued) workers.execute(this::serve);
+            updateInterest();
+        }
+
+        // Worker: runs every queued request, then writes the batch's responses at once.
+        void serve() {
+            List<String> batch = new ArrayList<>();
+            while (true) {
+                synchronized (this) {
+                    batch.addAll(requests);
+                    requests.clear();
+                    if (batch.isEmpty() || closing) {
+                        busy = false;
+                        break;
+                    }
+                }
+                for (String request : batch) {
+                    if (execute(request, out)) {
+                        synchronized (this) {
+                            closing = true;
+                        }
+                        break;
+                    }
+                }
+                batch.clear();
+                try {
+                    out.flush();
+                    // the socket is full: the selector writes the rest when it can
+                    if (!output.drainTo(channel)) onSelector(this::updateInterest);
+                } catch (IOException e) {
+                    onSelector(this::close);
+                    return;
+                }
+            }
+            onSelector(this::updateInterest);
+        }
+
+        // Selector thread: continues a write the socket could not take at once.
+        void writePending() {
+            try {
+                output.drainTo(channel);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            updateInterest();
+        }
+
+        // Selector thread: reads unless too much is queued either way, and
+        // waits for the socket to take more while output is pending.
+        void updateInterest() {
+            if (!key.isValid()) return;
+            int pending = output.pending();
+            boolean done;
+            int ops = pending > 0 ? SelectionKey.OP_WRITE : 0;
+            synchronized (this) {
+                done = closing && !busy && pending == 0;
+                if (!closing && requests.size() < MAX_QUEUED && pending < MAX_PENDING)
+                    ops |= SelectionKey.OP_READ;
+            }
+            if (done) {
+                close();
+                return;
+            }
+            key.interestOps(ops);
+        }
+
+        void close() {
+            synchronized (this) {
+                closing = true;
+                requests.clear();
+            }
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+
+    // REQUESTS
+
+    // Writes the response; true if the connection should close afterwards.
+    private boolean execute(String request, RowWriter out) {
+        String[] args = request.trim().split(" +");
+        String verb = args[0].toUpperCase(Locale.ROOT);
+        try {
+            switch (verb) {
+                case "PING":
+                    out.append("OK PONG").endRow();
+                    return false;
+
+                case "ADD_VEHICLE": {
+                    Vehicle v = RentalSystem.parseVehicle(rest(request));
+                    if (v == null || v.getPackedPlate() < 0) return error(out, "invalid vehicle");
+                    return system.addVehicle(v) ? ok(out) : error(out, "vehicle not added");
+                }
+
+                case "ADD_CUSTOMER": {
+                    Customer c = RentalSystem.parseCustomer(rest(request));
+                    if (c == null || c.getCustomerName().trim().isEmpty()) return error(out, "invalid customer");
+                    return system.addCustomer(c) ? ok(out) : error(out, "customer not added");
+                }
+
+                case "RENT":
+                case "RETURN": {
+                    if (args.length < 5) return error(out, "usage: " + verb + " <plate> <customerId> <date> <amount>");
+                    Vehicle v = system.findVehicleByPlate(args[1]);
+                    if (v == null) return error(out, "unknown vehicle " + args[1]);
+                    Customer c = system.findCustomerById(Integer.parseInt(args[2]));
+                    if (c == null) return error(out, "unknown customer " + args[2]);
+                    LocalDate date = LocalDate.parse(args[3]);
+                    double amount = Double.parseDouble(args[4]);
+                    if (verb.equals("RENT"))
+                        return system.rentVehicle(v, c, date, amount) ? ok(out) : error(out, "vehicle not available");
+                    return system.returnVehicle(v, c, date, amount) ? ok(out) : error(out, "vehicle not rented");
+                }
+
+                case "VEHICLE": {
+                    if (args.length < 2) return error(out, "usage: VEHICLE <plate>");
+                    Vehicle v = system.findVehicleByPlate(args[1]);
+                    if (v == null) return error(out, "unknown vehicle " + args[1]);
+                    out.append("OK ").append(v.getStatus().name()).append(' ')
+                       .append(RentalSystem.formatVehicle(v)).endRow();
+                    return false;
+                }
+
+                case "COUNT": {
+                    if (args.length < 2) return error(out, "usage: COUNT <status>");
+                    out.append("OK ").append(system.countVehicles(status(args[1]))).endRow();
+                    return false;
+                }
+
+                case "VEHICLES":
+                    return vehicles(args, out);
+
+                case "HISTORY":
+                    return history(args, out);
+
+                case "QUIT":
+                    out.append("OK BYE").endRow();
+                    return true;
+
+                default:
+                    return error(out, "unknown request " + args[0]);
+            }
+        } catch (RuntimeException e) {
+            return error(out, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private boolean vehicles(String[] args, RowWriter out) {
+        if (args.length < 3) return error(out, "usage: VEHICLES <status|ALL> <pageSize> [token]");
+        VehicleQuery query = null;
+        if (!args[1].equalsIgnoreCase("ALL")) {
+            query = new VehicleQuery();
+            query.setStatuses(status(args[1]));
+        }
+
+        int pageSize = Integer.parseInt(args[2]);
+        if (pageSize <= 0 || pageSize > RentalSystem.PAGE_ROWS)
+            return error(out, "page size must be 1 to " + RentalSystem.PAGE_ROWS);
+        Page<Vehicle> page = system.getVehiclesPage(query, args.length > 3 ? args[3] : null, pageSize);
+        header(out, page);
+        for (Vehicle v : page.getItems()) out.append(RentalSystem.formatVehicle(v)).endRow();
+        return false;
+    }
+
+    private boolean history(String[] args, RowWriter out) {
+        if (args.length < 2) return error(out, "usage: HISTORY <pageSize> [token|-] [key=value ...]");
+        int pageSize = Integer.parseInt(args[1]);
+        if (pageSize <= 0 || pageSize > RentalSystem.PAGE_ROWS)
+            return error(out, "page size must be 1 to " + RentalSystem.PAGE_ROWS);
+        String token = args.length > 2 && !args[2].equals("-") ? args[2] : null;
+        RecordFilter filter = new RecordFilter();
+        LocalDate from = null, to = null;
+        for (int i = 3; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            String name = eq < 0 ? args[i] : args[i].substring(0, eq).toLowerCase(Locale.ROOT);
+            String value = eq < 0 ? "" : args[i].substring(eq + 1);
+            switch (name) {
+                case "plate":    filter.setLicensePlate(value); break;
+                case "customer": filter.setCustomerId(Integer.parseInt(value)); break;
+                case "from":     from = LocalDate.parse(value); break;
+                case "to":       to = LocalDate.parse(value); break;
+                case "type":
+                    RecordType type = RecordType.parse(value);
+                    if (type == null) return error(out, "unknown record type " + value);
+                    filter.setType(type);
+                    break;
+                default:
+                    return error(out, "unknown filter " + name);
+            }
+        }
+        filter.setDateRange(from, to);
+
+        Page<RentalRecord> page = system.getRentalHistoryPage(filter, token, pageSize);
+        header(out, page);
+        long row = 0;
+        for (RentalRecord r : page.getItems()) {
+            ExportFormat.CSV.row(out, row++, RecordType.parse(r.getRecordType()), r.getVehicle().getPackedPlate(),
+                    r.getCustomer().getCustomerId(), r.getCustomer().getCustomerName(),
+                    (int) r.getRecordDate().toEpochDay(), RecordFormat.toCents(r.getTotalAmount()));
+        }
+        return false;
+    }
+
+    private static void header(RowWriter out, Page<?> page) {
+        out.append("OK ").append(page.getItems().size()).append(' ')
+           .append(page.hasNext() ? page.getNextToken() : "-").endRow();
+    }
+
+    private static Vehicle.VehicleStatus status(String name) {
+        for (Vehicle.VehicleStatus status : Vehicle.VehicleStatus.values())
+            if (status.name().equalsIgnoreCase(name)) return status;
+        throw new IllegalArgumentException("unknown status " + name);
+    }
+
+    // The request after its verb.
+    private static String rest(String request) {
+        String trimmed = request.trim();
+        int space = trimmed.indexOf(' ');
+        return space < 0 ? "" : trimmed.substring(space + 1).trim();
+    }
+
+    private static boolean ok(RowWriter out) {
+        out.append("OK").endRow();
+        return false;
+    }
+
+    private static boolean error(RowWriter out, String reason) {
+        out.append("ERR ").append(reason.replace('\n', ' ')).endRow();
+        return false;
+    }
+}
@@ -0,0 +1,178 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class RentalServerTest {
+
+    private static final int CLIENTS = 8;
+    private static final int BATCHES = 50;
+    private static final int PIPELINE = 100;  // requests sent before reading any response
+    private static final int CUSTOMER = 9101;
+
+    @Test
+    public void testPipelinedThroughputOverLoopback() throws Exception {
+
+        try (RentalServer server = start()) {
+            setUp(server.getPort());
+            String today = LocalDate.now().toString();
+
+            ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int c = 0; c < CLIENTS; c++) {
+                String plate = String.format("NET%03d", c);
+                futures.add(pool.submit(() -> {
+                    try (Client client = new Client(server.getPort())) {
+                        go.await();
+                        for (int b = 0; b < BATCHES; b++) {
+                            // one rent/return cycle per batch, padded out with lookups
+                            client.send("RENT " + plate + " " + CUSTOMER + " " + today + " 10");
+                            client.send("VEHICLE " + plate);
+                            client.send("RETURN " + plate + " " + CUSTOMER + " " + today + " 0");
+                            client.send("VEHICLE " + plate);
+                            for (int i = 4; i < PIPELINE; i++)
+                                client.send(i % 2 == 0 ? "PING" : "COUNT Available");
+                            client.flush();
+
+                            // responses come back in request order
+                            assertEquals("OK", client.read());
+                            assertTrue(client.read().startsWith("OK Rented Car," + plate));
+                            assertEquals("OK", client.read());
+                            assertTrue(client.read().startsWith("OK Available Car," + plate));
+                            for (int i = 4; i < PIPELINE; i++)
+                                assertTrue(client.read().startsWith(i % 2 == 0 ? "OK PONG" : "OK "));
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            go.countDown();
+            for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+            long nanos = System.nanoTime() - begin;
+            pool.shutdown();
+
+            long requests = (long) CLIENTS * BATCHES * PIPELINE;
+            System.out.printf("%d pipelined requests from %d clients in %.1f ms (%.0f requests/s)%n",
+                    requests, CLIENTS, nanos / 1e6, requests * 1e9 / nanos);
+        }
+    }
+
+    @Test
+    public void testHistoryPagesAndQuit() throws Exception {
+
+        try (RentalServer server = start()) {
+            setUp(server.getPort());
+            String today = LocalDate.now().toString();
+
+            try (Client client = new Client(server.getPort())) {
+                for (int i = 0; i < 3; i++) {
+                    client.send("RENT NET000 " + CUSTOMER + " " + today + " 10");
+                    client.send("RETURN NET000 " + CUSTOMER + " " + today + " 0");
+                }
+                client.flush();
+                for (int i = 0; i < 6; i++) assertEquals("OK", client.read());
+
+                // page through NET000's RENT records two at a time
+                int rows = 0;
+                String token = "-";
+                do {
+                    client.send("HISTORY 2 " + token + " plate=NET000 type=RENT");
+                    client.flush();
+                    String[] header = client.read().split(" ");
+                    assertEquals("OK", header[0]);
+                    for (int i = Integer.parseInt(header[1]); i > 0; i--, rows++)
+                        assertTrue(client.read().startsWith("RENT,NET000,"));
+                    token = header[2];
+                } while (!token.equals("-"));
+                assertTrue(rows >= 3);
+
+                client.send("HISTORY 1000000");
+                client.send("VEHICLES ALL 0");
+                client.send("ADD_CUSTOMER");
+                client.flush();
+                for (int i = 0; i < 3; i++) assertTrue(client.read().startsWith("ERR"));
+
+                client.send("NO_SUCH_REQUEST");
+                client.send("QUIT");
+                client.send("PING"); // not run: the connection closes after QUIT
+                client.flush();
+                assertTrue(client.read().startsWith("ERR"));
+                assertEquals("OK BYE", client.read());
+                assertNull(client.read());
+            }
+        }
+    }
+
+    private static RentalServer start() throws IOException {
+        return new RentalServer(RentalSystem.getInstance(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+    }
+
+    // One customer and one car per client. They may exist from an earlier run,
+    // in which case the cars are returned so every test starts with them Available.
+    private static void setUp(int port) throws IOException {
+        try (Client admin = new Client(port)) {
+            admin.send("ADD_CUSTOMER " + CUSTOMER + ",Network Test");
+            for (int c = 0; c < CLIENTS; c++) {
+                String plate = String.format("NET%03d", c);
+                admin.send("ADD_VEHICLE Car," + plate + ",Test,Car,2020,4");
+                admin.send("RETURN " + plate + " " + CUSTOMER + " " + LocalDate.now() + " 0");
+            }
+            admin.flush();
+            for (int i = 0; i < 1 + 2 * CLIENTS; i++) assertNotNull(admin.read());
+        }
+    }
+
+    private static final class Client implements Closeable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+        private final StringBuilder pending = new StringBuilder();
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String request) {
+            pending.append(request).append('\n');
+        }
+
+        // Sends every request queued by send() in one write.
+        void flush() throws IOException {
+            out.write(pending.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            pending.setLength(0);
+        }
+
+        String read() throws IOException {
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -1,128 +1,573 @@
-import java.util.List;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.io.FileWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.File;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-public class RentalSystem {
+public class RentalSystem implements Closeable {
 
     // SINGLETON
-    private static RentalSystem instance = null;
+    // The holder class is only initialized on the first getInstance() call,
+    // and class initialization is thread-safe.
+    private static class Holder {
+        static final RentalSystem INSTANCE = new RentalSystem();
+    }
 
     private RentalSystem() {
-        vehicles = new ArrayList<>();
-        customers = new ArrayList<>();
-        rentalHistory = new RentalHistory();
+        this(RentalConfig.fromSystemProperties());
+    }
+
+    // One branch of a ShardedRentalSystem; the public entry point is getInstance().
+    RentalSystem(RentalConfig config) {
+        this.config = config;
+        metrics = new RentalMetrics(config.isMetrics());
+        vehicles = new ConcurrentLinkedQueue<>();
+        customers = new ConcurrentLinkedQueue<>();
+        vehiclesByPlate = new ConcurrentIntObjectMap<>();
+        customersById = new ConcurrentIntObjectMap<>();
+        customerNames = new TrigramIndex();
+        rentalHistory = newHistory();
+        availability = new AvailabilityIndex();
+        searchIndex = new VehicleSearchIndex();
+        stats = new DashboardStats(availability);
+        fleetStore = openFleetStore();
+        openLogs();
         loadData(); // load saved data
+        loadReservations();
+        rentalHistory.freezeBefore(LocalDate.now()); // past months only change through late-dated records
+        journal = openJournal();
+        if (config.isMetrics()) metrics.registerMBeans(config.getBranch());
+        if (config.getMetricsDumpMs() > 0) metrics.startDump(config.getMetricsDumpMs());
     }
 
     public static RentalSystem getInstance() {
-        if (instance == null) {
-            instance = new RentalSystem();
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
-    private List<Vehicle> vehicles;
-    private List<Customer> customers;
+    private static final RecordType[] RECORD_TYPES = RecordType.values();
+    static final int PAGE_ROWS = 1024; // rows per page for listings and exports
+
+    private final RentalConfig config;
+    private final RentalMetrics metrics;
+    private Queue<Vehicle> vehicles;
+    private Queue<Customer> customers;
+    private ConcurrentIntObjectMap<Vehicle> vehiclesByPlate;
+    private ConcurrentIntObjectMap<Customer> customersById;
+    private TrigramIndex customerNames;
     private RentalHistory rentalHistory;
+    private AvailabilityIndex availability;
+    private VehicleSearchIndex searchIndex;
+    private DashboardStats stats;
+    private final FleetStore fleetStore; // null when vehicles are kept on the heap
+    private WriteAheadLog vehicleLog;
+    private WriteAheadLog customerLog;
+    private SegmentedRecordLog recordLog;
+    private WriteAheadLog reservationLog;
+    private final EventJournal<RentalEvent> journal;
+
+    static final String SNAPSHOT_FILE = "snapshot.txt";
+
+    private final ConcurrentIntObjectMap<ReservationCalendar> calendars = new ConcurrentIntObjectMap<>();
+    private final ConcurrentIntObjectMap<Reservation> reservationsById = new ConcurrentIntObjectMap<>();
+    private final AtomicInteger nextReservationId = new AtomicInteger(1);
+
+    // Writers hold the read side while they change state and append to a log;
+    // snapshot and compaction take the write side to see a consistent cut.
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final AtomicLong recordsSinceSnapshot = new AtomicLong();
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "rental-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private long coveredPosition;   // records before this log position are not in rentalHistory yet
+    private volatile boolean historyComplete = true;
+    private final List<Path> corruptSegments = new CopyOnWriteArrayList<>();
+    private final Thread shutdownHook = new Thread(this::closeLogs, "rental-shutdown");
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public boolean addVehicle(Vehicle vehicle) {
-        if (findVehicleByPlate(vehicle.getLicensePlate()) != null) {
-            System.out.println("Error: A vehicle with this license plate already exists.");
+        if (vehicle.getPackedPlate() < 0) {
+            System.out.println("Error: Vehicle has no valid license plate.");
             return false;
         }
+        checkpointLock.readLock().lock();
+        try {
+            if (!indexVehicle(vehicle)) {
+                System.out.println("Error: A vehicle with this license plate already exists.");
+                return false;
+            }
 
-        vehicles.add(vehicle);
-        saveVehicle(vehicle);
-        return true;
+            long sequence = publish(RentalEvent.Kind.VEHICLE, null, formatVehicle(vehicle));
+            if (!journal.await(sequence, HISTORY_STAGE)) {
+                unindexVehicle(vehicle);
+                return false;
+            }
+            return true;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
     }
 
     public boolean addCustomer(Customer customer) {
-        if (findCustomerById(customer.getCustomerId()) != null) {
-            System.out.println("Error: A customer with this ID already exists.");
-            return false;
+        checkpointLock.readLock().lock();
+        try {
+            if (!indexCustomer(customer)) {
+                System.out.println("Error: A customer with this ID already exists.");
+                return false;
+            }
+            return logCustomer(customer);
+        } finally {
+            checkpointLock.readLock().unlock();
         }
+    }
 
-        customers.add(customer);
-        saveCustomer(customer);
+    // For ShardedRentalSystem: makes a customer whose home is another branch
+    // known here, so records of this branch can name them after a restart.
+    // True if the customer is known here, whether or not it was just added.
+    boolean adoptCustomer(Customer customer) {
+        if (customersById.get(customer.getCustomerId()) != null) return true;
+        checkpointLock.readLock().lock();
+        try {
+            return !indexCustomer(customer) || logCustomer(customer);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the checkpoint read lock and has just indexed the customer.
+    private boolean logCustomer(Customer customer) {
+        long sequence = publish(RentalEvent.Kind.CUSTOMER, null,
+                customer.getCustomerId() + "," + customer.getCustomerName());
+        if (!journal.await(sequence, HISTORY_STAGE)) {
+            unindexCustomer(customer);
+            return false;
+        }
         return true;
     }
 
     // RENT & RETURN
     
+    // Status changes are compare-and-set, so only one of several concurrent
+    // callers can win the same vehicle. The record must be durable before the
+    // call succeeds; if it can't be written the status change is undone.
+    // The record goes through the journal (see JOURNAL below).
+
     public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
-        if (vehicle.getStatus() == Vehicle.VehicleStatus.Available) {
+        long start = metrics.start();
+        try {
+            refreshHold(vehicle); // a vehicle reserved for today is Held, not Available
+            return rent(vehicle, customer, date, amount, Vehicle.VehicleStatus.Available);
+        } finally {
+            metrics.stop(metrics.rentVehicle, start);
+        }
+    }
 
-            vehicle.setStatus(Vehicle.VehicleStatus.Rented);
+    // Moves the vehicle from the given status to Rented and logs the RENT record.
+    private boolean rent(Vehicle vehicle, Customer customer, LocalDate date, double amount, Vehicle.VehicleStatus from) {
+        RentalRecord rec = new RentalRecord(vehicle, customer, date, amount, "RENT");
+        return changeStatus(vehicle, from, Vehicle.VehicleStatus.Rented, rec);
+    }
 
-            RentalRecord rec = new RentalRecord(vehicle, customer, date, amount, "RENT");
-            rentalHistory.addRecord(rec);
-            saveRecord(rec);
+    public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        long start = metrics.start();
+        try {
+            return giveBack(vehicle, customer, date, extraFees);
+        } finally {
+            metrics.stop(metrics.returnVehicle, start);
+        }
+    }
 
-            return true;
+    private boolean giveBack(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        RentalRecord rec = new RentalRecord(vehicle, customer, date, extraFees, "RETURN");
+        return changeStatus(vehicle, Vehicle.VehicleStatus.Rented, Vehicle.VehicleStatus.Available, rec);
+    }
+
+    // The vehicle's monitor is held from the status CAS until the record has
+    // been written and added to the history, or has failed and the status is
+    // put back. Nothing else can change the vehicle in between, so an undo
+    // never overwrites a later rental and no RETURN is written after a RENT
+    // that failed. Records of different vehicles still share a batch. The
+    // fleet indexes are told after the monitor is released.
+    private boolean changeStatus(Vehicle vehicle, Vehicle.VehicleStatus from, Vehicle.VehicleStatus to, RentalRecord rec) {
+        boolean written;
+        checkpointLock.readLock().lock();
+        try {
+            synchronized (vehicle) {
+                if (!vehicle.compareAndSetStatusQuietly(from, to)) {
+                    if (to == Vehicle.VehicleStatus.Rented) metrics.rentRejected();
+                    else metrics.returnRejected();
+                    return false;
+                }
+                written = journal.await(publish(RentalEvent.Kind.RECORD, rec, null), HISTORY_STAGE);
+                if (!written) vehicle.compareAndSetStatusQuietly(to, from);
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
         }
+        if (!written) return false;
 
-        return false;  
+        vehicle.fireStatusChanged();
+        recordWritten();
+        return true;
     }
 
 
-    public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
-        if (vehicle.getStatus() == Vehicle.VehicleStatus.Rented) {
+    // BULK IMPORT
+    // Rows use the vehicles.txt / customers.txt formats; blank lines and lines
+    // starting with '#' are skipped. Rows are parsed and validated in parallel,
+    // checked for duplicates within the batch and against existing data, then
+    // indexed and appended to the data file in a single write. With
+    // allOrNothing, any rejected row or a failed write leaves nothing imported.
+
+    public ImportReport importVehicles(BufferedReader in, boolean allOrNothing) throws IOException {
+        return importVehicles(readRows(in), allOrNothing);
+    }
 
-            vehicle.setStatus(Vehicle.VehicleStatus.Available);
+    public ImportReport importVehicles(List<String> rows, boolean allOrNothing) {
+        return importRows(rows, allOrNothing, vehicleLog, row -> {
+            Vehicle v = parseVehicle(row);
+            if (v == null) throw new IllegalArgumentException("Unknown vehicle type or missing fields");
+            return v;
+        }, Vehicle::getPackedPlate, vehiclesByPlate::get, this::indexVehicle, this::unindexVehicle,
+                RentalSystem::formatVehicle, "vehicle with this license plate");
+    }
 
-            RentalRecord rec = new RentalRecord(vehicle, customer, date, extraFees, "RETURN");
-            rentalHistory.addRecord(rec);
-            saveRecord(rec);
+    public ImportReport importCustomers(BufferedReader in, boolean allOrNothing) throws IOException {
+        return importCustomers(readRows(in), allOrNothing);
+    }
 
-            return true;
+    public ImportReport importCustomers(List<String> rows, boolean allOrNothing) {
+        return importRows(rows, allOrNothing, customerLog, row -> {
+            Customer c = parseCustomer(row.trim());
+            if (c.getCustomerName().trim().isEmpty()) throw new IllegalArgumentException("Missing customer name");
+            return c;
+        }, Customer::getCustomerId, customersById::get, this::indexCustomer, this::unindexCustomer,
+                c -> c.getCustomerId() + "," + c.getCustomerName(), "customer with this ID");
+    }
+
+    private static List<String> readRows(BufferedReader in) throws IOException {
+        List<String> rows = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) rows.add(line);
+        return rows;
+    }
+
+    private <T> ImportReport importRows(List<String> rows, boolean allOrNothing, WriteAheadLog log,
+                                        Function<String, T> parse, ToIntFunction<T> key, IntFunction<T> existing,
+                                        Predicate<T> index, Consumer<T> unindex, Function<T, String> format,
+                                        String what) {
+        // parse in parallel; each slot holds the parsed item or its RowError
+        Object[] parsed = IntStream.range(0, rows.size()).parallel().mapToObj(i -> {
+            String row = rows.get(i).trim();
+            if (row.isEmpty() || row.startsWith("#")) return null;
+            try {
+                return parse.apply(row);
+            } catch (NumberFormatException e) {
+                return new ImportReport.RowError(i + 1, row, "Invalid number: " + e.getMessage());
+            } catch (RuntimeException e) {
+                return new ImportReport.RowError(i + 1, row, e.getMessage());
+            }
+        }).toArray();
+
+        List<ImportReport.RowError> errors = new ArrayList<>();
+        List<T> valid = new ArrayList<>();
+        int[] validLines = new int[parsed.length];
+        IntObjectMap<int[]> firstLine = new IntObjectMap<>();
+        int read = 0;
+        for (int i = 0; i < parsed.length; i++) {
+            if (parsed[i] == null) continue;
+            read++;
+            if (parsed[i] instanceof ImportReport.RowError) {
+                errors.add((ImportReport.RowError) parsed[i]);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            T item = (T) parsed[i];
+            int k = key.applyAsInt(item);
+            int[] first = firstLine.putIfAbsent(k, new int[] {i + 1});
+            if (first != null) {
+                errors.add(new ImportReport.RowError(i + 1, rows.get(i).trim(),
+                        "Duplicate of line " + first[0] + " in this import"));
+            } else if (existing.apply(k) != null) {
+                errors.add(new ImportReport.RowError(i + 1, rows.get(i).trim(), "A " + what + " already exists"));
+            } else {
+                validLines[valid.size()] = i + 1;
+                valid.add(item);
+            }
         }
+        if (allOrNothing && !errors.isEmpty())
+            return new ImportReport(read, 0, errors, false, errors.size() + " rows rejected");
+
+        checkpointLock.readLock().lock();
+        try {
+            List<T> added = new ArrayList<>(valid.size());
+            StringBuilder batch = new StringBuilder();
+            for (int i = 0; i < valid.size(); i++) {
+                T item = valid.get(i);
+                // a concurrent addVehicle/addCustomer may have taken the key since validation
+                if (!index.test(item)) {
+                    errors.add(new ImportReport.RowError(validLines[i], rows.get(validLines[i] - 1).trim(),
+                            "A " + what + " already exists"));
+                    continue;
+                }
+                added.add(item);
+                batch.append(format.apply(item)).append('\n');
+            }
 
-        return false; 
+            String failure = null;
+            if (allOrNothing && !errors.isEmpty()) {
+                failure = "rows were added concurrently";
+            } else if (!added.isEmpty()) {
+                try {
+                    log.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    failure = "error writing " + log.getPath().getFileName() + ": " + e.getMessage();
+                }
+            }
+            if (failure != null) {
+                for (T item : added) unindex.accept(item);
+                return new ImportReport(read, 0, errors, false, failure);
+            }
+            return new ImportReport(read, added.size(), errors, true, null);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
     }
 
+    // RESERVATIONS
+    // reservations.txt logs RESERVE,<id>,<plate>,<customerId>,<start>,<end>,
+    // CANCEL,<id> and PICKUP,<id> lines and is replayed in full on startup.
+    // A vehicle is Held while one of its reservations covers today; holds are
+    // refreshed on startup and whenever the vehicle is reserved or rented.
+
+    public Reservation reserveVehicle(Vehicle vehicle, Customer customer, LocalDate start, LocalDate end) {
+        LocalDate today = LocalDate.now();
+        if (end.isBefore(start) || end.isBefore(today)) {
+            System.out.println("Error: Reservation dates must be in order and not in the past.");
+            return null;
+        }
+        if (vehiclesByPlate.get(vehicle.getPackedPlate()) != vehicle) {
+            System.out.println("Error: Vehicle " + vehicle.getLicensePlate() + " is not in the fleet.");
+            return null;
+        }
+        if (customersById.get(customer.getCustomerId()) == null) {
+            System.out.println("Error: No customer with ID " + customer.getCustomerId() + ".");
+            return null;
+        }
 
-    // DISPLAY METHODS
-    
-    public void displayVehicles(Vehicle.VehicleStatus status) {
+        Reservation reservation = new Reservation(nextReservationId.getAndIncrement(), vehicle, customer, start, end);
+        ReservationCalendar calendar = calendar(vehicle);
+        if (!calendar.add(reservation)) {
+            System.out.println("Error: " + vehicle.getLicensePlate() + " is already reserved between "
+                    + start + " and " + end + ".");
+            return null;
+        }
+        if (reservation.covers(today)
+                && !vehicle.compareAndSetStatus(Vehicle.VehicleStatus.Available, Vehicle.VehicleStatus.Held)) {
+            calendar.remove(reservation);
+            System.out.println("Error: " + vehicle.getLicensePlate() + " is not available today.");
+            return null;
+        }
 
-        if (status == null)
-            System.out.println("\n=== All Vehicles ===");
-        else
-            System.out.println("\n=== " + status + " Vehicles ===");
+        if (!saveReservation("RESERVE," + reservation.getId() + "," + vehicle.getLicensePlate() + ","
+                + customer.getCustomerId() + "," + start + "," + end)) {
+            calendar.remove(reservation);
+            refreshHold(vehicle);
+            return null;
+        }
+        reservationsById.put(reservation.getId(), reservation);
+        return reservation;
+    }
 
-        System.out.printf("|%-16s | %-12s | %-12s | %-12s | %-6s | %-18s |%n",
-                " Type", "Plate", "Make", "Model", "Year", "Status");
-        System.out.println("|--------------------------------------------------------------------------------------------|");
+    public boolean cancelReservation(int reservationId) {
+        Reservation reservation = reservationsById.get(reservationId);
+        if (reservation == null) {
+            System.out.println("Error: No reservation with ID " + reservationId + ".");
+            return false;
+        }
+        if (!saveReservation("CANCEL," + reservationId)) return false;
 
-        boolean found = false;
+        reservationsById.remove(reservationId);
+        calendar(reservation.getVehicle()).remove(reservation);
+        refreshHold(reservation.getVehicle());
+        return true;
+    }
 
-        for (Vehicle v : vehicles) {
-            if (status == null || v.getStatus() == status) {
+    // Turns the reservation into a RENT record; allowed on any day it covers.
+    public boolean pickUpReservation(int reservationId, LocalDate date, double amount) {
+        Reservation reservation = reservationsById.get(reservationId);
+        if (reservation == null || !reservation.covers(date)) {
+            System.out.println("Error: No reservation with ID " + reservationId + " for " + date + ".");
+            return false;
+        }
 
-                found = true;
+        Vehicle vehicle = reservation.getVehicle();
+        refreshHold(vehicle);
+        Vehicle.VehicleStatus from = reservation.covers(LocalDate.now())
+                ? Vehicle.VehicleStatus.Held : Vehicle.VehicleStatus.Available;
+        if (!rent(vehicle, reservation.getCustomer(), date, amount, from))
+            return false;
 
-                String type = (v instanceof Car) ? "Car"
-                        : (v instanceof Minibus) ? "Minibus"
-                        : (v instanceof PickupTruck) ? "Pickup Truck"
-                        : "Unknown";
+        // the RENT record is written first: a crash in between leaves a stale
+        // reservation on a rented vehicle rather than a lost booking
+        reservationsById.remove(reservationId);
+        calendar(vehicle).remove(reservation);
+        saveReservation("PICKUP," + reservationId);
+        return true;
+    }
 
-                System.out.printf("| %-15s | %-12s | %-12s | %-12s | %-6d | %-18s |%n",
-                        type, v.getLicensePlate(), v.getMake(), v.getModel(), v.getYear(), v.getStatus());
-            }
+    public List<Reservation> getReservations(Vehicle vehicle) {
+        ReservationCalendar calendar = calendars.get(vehicle.getPackedPlate());
+        return calendar == null ? Collections.emptyList() : calendar.list();
+    }
+
+    // Vehicles of the type (e.g. "Car"; null for any) with no reservation in
+    // [start, end] that are not out of service. Vehicles rented now are only
+    // offered for ranges starting after today.
+    public List<Vehicle> findFreeVehicles(String type, LocalDate start, LocalDate end) {
+        long started = metrics.start();
+        VehicleQuery query = new VehicleQuery();
+        query.setType(type);
+        query.setStatuses(Vehicle.VehicleStatus.Available, Vehicle.VehicleStatus.Held, Vehicle.VehicleStatus.Rented);
+        boolean startsToday = !start.isAfter(LocalDate.now());
+
+        List<Vehicle> free = new ArrayList<>();
+        for (Vehicle v : searchIndex.search(query)) {
+            if (startsToday && v.getStatus() == Vehicle.VehicleStatus.Rented) continue;
+            ReservationCalendar calendar = calendars.get(v.getPackedPlate());
+            if (calendar == null || calendar.isFree(start, end)) free.add(v);
         }
+        metrics.stop(metrics.findFreeVehicles, started);
+        return free;
+    }
 
-        if (!found) {
-            if (status == null)
-                System.out.println("  No vehicles found.");
-            else
-                System.out.println("  No vehicles with Status: " + status);
+    private ReservationCalendar calendar(Vehicle vehicle) {
+        ReservationCalendar calendar = calendars.get(vehicle.getPackedPlate());
+        if (calendar != null) return calendar;
+        ReservationCalendar created = new ReservationCalendar();
+        ReservationCalendar existing = calendars.putIfAbsent(vehicle.getPackedPlate(), created);
+        return existing != null ? existing : created;
+    }
+
+    // Drops ended reservations, then holds an Available vehicle reserved for
+    // today or releases a Held one that no longer is.
+    private void refreshHold(Vehicle vehicle) {
+        ReservationCalendar calendar = calendars.get(vehicle.getPackedPlate());
+        LocalDate today = LocalDate.now();
+        if (calendar != null) {
+            for (Reservation ended : calendar.removeEndedBefore(today))
+                reservationsById.remove(ended.getId());
         }
 
-        System.out.println();
+        if (calendar != null && calendar.covering(today) != null)
+            vehicle.compareAndSetStatus(Vehicle.VehicleStatus.Available, Vehicle.VehicleStatus.Held);
+        else
+            vehicle.compareAndSetStatus(Vehicle.VehicleStatus.Held, Vehicle.VehicleStatus.Available);
+    }
+
+    private void loadReservations() {
+        long start = metrics.start();
+        try (CsvReader in = CsvReader.open(config.resolve("reservations.txt"), 0, Long.MAX_VALUE)) {
+            while (in.next()) {
+                int id = in.intField(1);
+                nextReservationId.accumulateAndGet(id + 1, Math::max);
+
+                if (in.equalsIgnoreCase(0, "RESERVE") && in.fieldCount() >= 6) {
+                    int plate = in.plateField(2);
+                    Vehicle v = plate < 0 ? null : vehiclesByPlate.get(plate);
+                    Customer c = customersById.get(in.intField(3));
+                    if (v == null || c == null) continue;
+                    Reservation r = new Reservation(id, v, c,
+                            LocalDate.ofEpochDay(in.epochDayField(4)), LocalDate.ofEpochDay(in.epochDayField(5)));
+                    if (calendar(v).add(r)) reservationsById.put(id, r);
+                } else {
+                    // CANCEL or PICKUP
+                    Reservation r = reservationsById.remove(id);
+                    if (r != null) calendar(r.getVehicle()).remove(r);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Error loading reservations: " + e.getMessage());
+            metrics.loadError("reservations.txt: " + e.getMessage());
+        }
+
+        for (Vehicle v : vehicles)
+            refreshHold(v);
+        metrics.stop(metrics.loadReservations, start);
+    }
+
+    // DISPLAY METHODS
+    // Listings walk cursors a page at a time and are formatted into one
+    // RowWriter, which writes to System.out once per page of rows.
+
+    // One status is listed from its availability partition, in the order
+    // vehicles entered it, at O(result); the whole fleet in the order added.
+    public void displayVehicles(Vehicle.VehicleStatus status) {
+        try (RowWriter out = RowWriter.console()) {
+            out.endRow().append(status == null ? "=== All Vehicles ===" : "=== " + status + " Vehicles ===").endRow();
+            out.append("|").cell(" Type", 16).append(" | ").cell("Plate", 12).append(" | ").cell("Make", 12)
+               .append(" | ").cell("Model", 12).append(" | ").cell("Year", 6).append(" | ").cell("Status", 18)
+               .append(" |").endRow();
+            out.append("|--------------------------------------------------------------------------------------------|").endRow();
+
+            List<Vehicle> page = new ArrayList<>(PAGE_ROWS);
+            boolean found = false;
+            long next = 0;
+            while (next >= 0) {
+                page.clear();
+                next = status == null ? searchIndex.page(null, (int) next, PAGE_ROWS, page)
+                        : availability.page(status, next, PAGE_ROWS, page);
+                for (Vehicle v : page) {
+                    found = true;
+                    out.append("| ").cell(v.getTypeName(), 15).append(" | ");
+                    int plate = out.mark();
+                    out.plate(v.getPackedPlate()).padTo(plate, 12)
+                       .append(" | ").cell(v.getMake(), 12).append(" | ").cell(v.getModel(), 12).append(" | ");
+                    int year = out.mark();
+                    out.append(v.getYear()).padTo(year, 6).append(" | ").cell(v.getStatus().name(), 18)
+                       .append(" |").endRow();
+                }
+                out.write();
+            }
+
+            if (!found) {
+                if (status == null)
+                    out.append("  No vehicles found.").endRow();
+                else
+                    out.append("  No vehicles with Status: " + status).endRow();
+            }
+            out.endRow();
+        } catch (IOException e) {
+            System.out.println("Error displaying vehicles: " + e.getMessage());
+        }
     }
 
     public void displayAllCustomers() {
@@ -131,212 +576,896 @@ public class RentalSystem {
     }
 
     public void displayRentalHistory() {
+        displayRentalHistory(null);
+    }
 
-        if (rentalHistory.getRentalHistory().isEmpty()) {
+    // Records matching the filter (null for all), oldest first.
+    public void displayRentalHistory(RecordFilter filter) {
+        try {
+            ensureFullHistory();
+        } catch (UncheckedIOException e) {
+            System.out.println("Error displaying rental history: " + e.getMessage());
+            return;
+        }
+
+        if (rentalHistory.isEmpty()) {
             System.out.println("  No rental history found.");
             return;
         }
 
-        System.out.printf("|%-10s | %-12s | %-20s | %-12s | %-12s |%n",
-                " Type", "Plate", "Customer", "Date", "Amount");
-        System.out.println("|-------------------------------------------------------------------------------|");
+        try (RowWriter out = RowWriter.console()) {
+            out.append("|").cell(" Type", 10).append(" | ").cell("Plate", 12).append(" | ").cell("Customer", 20)
+               .append(" | ").cell("Date", 12).append(" | ").cell("Amount", 12).append(" |").endRow();
+            out.append("|-------------------------------------------------------------------------------|").endRow();
+
+            RecordVisitor row = (plate, customerId, epochDay, cents, type) -> {
+                Customer customer = rentalHistory.customer(customerId);
+                out.append("| ").cell(RECORD_TYPES[type].name(), 9).append(" | ");
+                int at = out.mark();
+                out.plate(plate).padTo(at, 12)
+                   .append(" | ").cell(customer == null ? "" : customer.getCustomerName(), 20).append(" | ");
+                at = out.mark();
+                out.date(epochDay).padTo(at, 12).append(" | $");
+                at = out.mark();
+                out.money(cents).padTo(at, 11).append(" |").endRow();
+            };
+            int next = 0;
+            while (next >= 0) {
+                next = rentalHistory.scan(filter, next, PAGE_ROWS, row);
+                out.write();
+            }
+            out.endRow();
+        } catch (IOException e) {
+            System.out.println("Error displaying rental history: " + e.getMessage());
+        }
+    }
+
+    // PAGING AND EXPORT
+    // Cursors over the history and the fleet: pass a null token for the first
+    // page and each page's next token for the page after it.
+
+    public Page<RentalRecord> getRentalHistoryPage(RecordFilter filter, String token, int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size must be positive");
+        ensureFullHistory();
 
-        for (RentalRecord r : rentalHistory.getRentalHistory()) {
-            System.out.printf("| %-9s | %-12s | %-20s | %-12s | $%-11.2f |%n",
-                    r.getRecordType(),
-                    r.getVehicle().getLicensePlate(),
-                    r.getCustomer().getCustomerName(),
-                    r.getRecordDate(),
-                    r.getTotalAmount());
+        List<RentalRecord> records = new ArrayList<>(Math.min(pageSize, PAGE_ROWS));
+        int next = rentalHistory.scan(filter, Page.position(token), pageSize,
+                (plate, customerId, epochDay, cents, type) -> records.add(new RentalRecord(
+                        rentalHistory.vehicle(plate), rentalHistory.customer(customerId),
+                        LocalDate.ofEpochDay(epochDay), cents / 100.0, RECORD_TYPES[type].name())));
+        return new Page<>(records, Page.token(next));
+    }
+
+    // Vehicles matching the query (null for the whole fleet), in the order they were added.
+    public Page<Vehicle> getVehiclesPage(VehicleQuery query, String token, int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size must be positive");
+
+        List<Vehicle> found = new ArrayList<>(Math.min(pageSize, PAGE_ROWS));
+        int next = searchIndex.page(query, Page.position(token), pageSize, found);
+        return new Page<>(found, Page.token(next));
+    }
+
+    // Writes the records matching the filter (null for all) to the file, a
+    // page at a time, so only one page of rows is ever held in memory.
+    public boolean exportRentalHistory(Path file, ExportFormat format, RecordFilter filter) {
+        try {
+            ensureFullHistory();
+        } catch (UncheckedIOException e) {
+            System.out.println("Error exporting rental history: " + e.getMessage());
+            return false;
         }
 
-        System.out.println();
+        try (RowWriter out = RowWriter.file(file)) {
+            format.begin(out);
+            long[] rows = {0};
+            RecordVisitor row = (plate, customerId, epochDay, cents, type) -> {
+                Customer customer = rentalHistory.customer(customerId);
+                format.row(out, rows[0]++, RECORD_TYPES[type], plate, customerId,
+                        customer == null ? "" : customer.getCustomerName(), epochDay, cents);
+            };
+            int next = 0;
+            while (next >= 0) {
+                next = rentalHistory.scan(filter, next, PAGE_ROWS, row);
+                out.write();
+            }
+            format.end(out, rows[0]);
+            System.out.println("Exported " + rows[0] + " records to " + file);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error exporting rental history: " + e.getMessage());
+            return false;
+        }
     }
 
     public Vehicle findVehicleByPlate(String plate) {
-        for (Vehicle v : vehicles)
-            if (v.getLicensePlate().equalsIgnoreCase(plate))
-                return v;
-        return null;
+        long start = metrics.startLookup();
+        int packed = Vehicle.packPlate(plate);
+        Vehicle found = packed < 0 ? null : vehiclesByPlate.get(packed);
+        metrics.stop(metrics.findVehicleByPlate, start);
+        return found;
     }
 
     public Customer findCustomerById(int id) {
-        for (Customer c : customers)
-            if (c.getCustomerId() == id)
-                return c;
-        return null;
+        long start = metrics.startLookup();
+        Customer found = customersById.get(id);
+        metrics.stop(metrics.findCustomerById, start);
+        return found;
+    }
+
+    // Customers whose name contains the text; if there are none, customers whose
+    // name is close to it (a typo or two away), best match first.
+    public List<Customer> findCustomersByName(String name) {
+        long start = metrics.start();
+        int[] ids = customerNames.find(name);
+        if (ids.length == 0) ids = customerNames.findSimilar(name, 0.4);
+
+        List<Customer> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Customer c = customersById.get(id);
+            if (c != null) result.add(c);
+        }
+        metrics.stop(metrics.findCustomersByName, start);
+        return result;
+    }
+
+    // Records dated from..to inclusive; type may be null for both RENT and RETURN.
+    public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to, RecordType type) {
+        long start = metrics.start();
+        ensureFullHistory();
+        List<RentalRecord> records = rentalHistory.getRentalRecordsBetween(from, to, type);
+        metrics.stop(metrics.recordsBetween, start);
+        return records;
+    }
+
+    public List<Vehicle> getVehiclesByStatus(Vehicle.VehicleStatus status) {
+        return availability.list(status);
+    }
+
+    // Vehicles matching all of the query's constraints, e.g. an accessible
+    // Minibus, or a PickupTruck with a trailer and cargo size of at least 300.
+    public List<Vehicle> searchVehicles(VehicleQuery query) {
+        long start = metrics.start();
+        List<Vehicle> found = searchIndex.search(query);
+        metrics.stop(metrics.searchVehicles, start);
+        return found;
+    }
+
+    public int countVehicles(Vehicle.VehicleStatus status) {
+        return availability.count(status);
+    }
+
+    // Vehicles in the status per type, e.g. {Car=3, Minibus=1}.
+    public Map<String, Integer> countVehiclesByType(Vehicle.VehicleStatus status) {
+        return availability.countByType(status);
+    }
+
+    // Running totals; reads are O(1) and do not touch the history.
+    public DashboardStats getStats() {
+        return stats;
+    }
+
+    // Operation latencies and error counters; also published over JMX.
+    public RentalMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Reports over the full rental history.
+    public RentalAnalytics getAnalytics() {
+        ensureFullHistory();
+        return new RentalAnalytics(rentalHistory);
+    }
+
+    public List<RentalRecord> getRentalRecordsByCustomer(Customer customer) {
+        long start = metrics.start();
+        ensureFullHistory();
+        List<RentalRecord> records = rentalHistory.getRentalRecordsByCustomer(customer.getCustomerId());
+        metrics.stop(metrics.recordsByCustomer, start);
+        return records;
+    }
+
+    // INDEXES
+
+    // Adds the vehicle to the fleet unless its plate is already taken. With a
+    // fleet store the vehicle is attached to it first, before other threads can see it.
+    private boolean indexVehicle(Vehicle vehicle) {
+        int packed = vehicle.getPackedPlate();
+        if (packed < 0) return false;
+        if (fleetStore != null && !fleetStore.attach(vehicle)) return false;
+        if (vehiclesByPlate.putIfAbsent(packed, vehicle) != null) {
+            if (fleetStore != null) fleetStore.detach(vehicle);
+            return false;
+        }
+        // listener first: a change racing with the adds is then read back by them
+        vehicle.setStatusListener(fleetListener);
+        vehicles.add(vehicle);
+        availability.add(vehicle);
+        searchIndex.add(vehicle);
+        return true;
+    }
+
+    private void unindexVehicle(Vehicle vehicle) {
+        vehicle.setStatusListener(null);
+        availability.remove(vehicle);
+        searchIndex.remove(vehicle);
+        vehiclesByPlate.remove(vehicle.getPackedPlate());
+        vehicles.remove(vehicle);
+        // other threads may still hold the vehicle, so it keeps its slot
+        if (fleetStore != null) fleetStore.release(vehicle);
+    }
+
+    // Every status change, whatever made it, reaches the fleet indexes.
+    private final Vehicle.StatusListener fleetListener = new Vehicle.StatusListener() {
+        @Override
+        public void statusChanged(Vehicle vehicle) {
+            availability.statusChanged(vehicle);
+            searchIndex.statusChanged(vehicle);
+        }
+
+        @Override
+        public void flagsChanged(Vehicle vehicle) {
+            searchIndex.flagsChanged(vehicle);
+        }
+    };
+
+    // Histories read the system's vehicle, customer and name tables rather than keeping copies.
+    private RentalHistory newHistory() {
+        return new RentalHistory(vehiclesByPlate, customersById, customerNames);
+    }
+
+    private boolean indexCustomer(Customer customer) {
+        if (customersById.putIfAbsent(customer.getCustomerId(), customer) != null)
+            return false;
+        customers.add(customer);
+        customerNames.add(customer.getCustomerId(), customer.getCustomerName());
+        return true;
+    }
+
+    private void unindexCustomer(Customer customer) {
+        customerNames.remove(customer.getCustomerId());
+        customersById.remove(customer.getCustomerId());
+        customers.remove(customer);
     }
 
     // SAVE METHODS
+    // Each data file is a write-ahead log; concurrent saves to the same file
+    // are batched into one write (and one fsync, depending on the policy).
+
+    private void openLogs() {
+        try {
+            vehicleLog = openLog("vehicles.txt");
+            customerLog = openLog("customers.txt");
+            reservationLog = openLog("reservations.txt");
+            RecordFormat format = config.getRecordFormat();
+            recordLog = new SegmentedRecordLog(config.resolve(format.getDirectory()), format, config);
+            if (recordLog.listAll().isEmpty()) {
+                if (format == RecordFormat.BINARY && Files.isDirectory(config.resolve(RecordFormat.CSV.getDirectory()))) {
+                    long converted = RecordLogConverter.convertCsvToBinary(config);
+                    System.out.println("Converted " + converted + " rental records to the binary format");
+                    recordLog.open();
+                } else {
+                    recordLog.open();
+                    migrateLegacyRecords();
+                }
+            } else {
+                recordLog.open();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening data files", e);
+        }
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private FleetStore openFleetStore() {
+        switch (config.getFleetStorage()) {
+            case DIRECT:
+                return FleetStore.direct();
+            case MAPPED:
+                try {
+                    return FleetStore.mapped(config.resolve("fleet.slots"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error opening fleet.slots", e);
+                }
+            default:
+                return null;
+        }
+    }
+
+    private WriteAheadLog openLog(String fileName) throws IOException {
+        return new WriteAheadLog(config.resolve(fileName), config.getDurability(), config.getSyncIntervalMs());
+    }
+
+    // Stops the background threads, lets the journal finish what was
+    // published and closes the data files. Use for systems that do not live
+    // until exit, such as those of tests and benchmarks; the system must not
+    // be used afterwards. At exit the shutdown hook does the same.
+    @Override
+    public void close() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already exiting; the hook is running or about to
+        }
+        closeLogs();
+    }
 
-    private void saveVehicle(Vehicle vehicle) {
-        try (FileWriter writer = new FileWriter("vehicles.txt", true)) {
-
-            String type;
-            if (vehicle instanceof Car) type = "Car";
-            else if (vehicle instanceof Minibus) type = "Minibus";
-            else if (vehicle instanceof PickupTruck) type = "PickupTruck";
-            else type = "Unknown";
-
-            writer.write(type + "," +
-                         vehicle.getLicensePlate() + "," +
-                         vehicle.getMake() + "," +
-                         vehicle.getModel() + "," +
-                         vehicle.getYear());
-
-            if (vehicle instanceof Car) {
-                writer.write("," + ((Car) vehicle).getNumSeats());
-            } else if (vehicle instanceof Minibus) {
-                writer.write("," + ((Minibus) vehicle).isAccessible());
-            } else if (vehicle instanceof PickupTruck) {
-                PickupTruck p = (PickupTruck) vehicle;
-                writer.write("," + p.getCargoSize() + "," + p.hasTrailer());
+    private void closeLogs() {
+        if (!closed.compareAndSet(false, true)) return;
+        metrics.stopDump();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) journal.halt();
+        for (Closeable log : new Closeable[] { vehicleLog, customerLog, reservationLog, recordLog, fleetStore }) {
+            if (log == null) continue;
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.out.println("Error closing data file: " + e.getMessage());
             }
+        }
+    }
+
+    // Moves records from the old single-file format (rental_records.txt plus any
+    // rental_records.archive-N.txt) into the segmented log, keeping their order.
+    // One way: the old files are renamed *.migrated and never read again.
+    private void migrateLegacyRecords() throws IOException {
+        List<Path> legacy = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(config.getDataDir(), "rental_records.archive-*.txt")) {
+            for (Path p : dir) legacy.add(p);
+        }
+        legacy.sort((a, b) -> Long.compare(legacyGeneration(a), legacyGeneration(b)));
+        Path current = config.resolve("rental_records.txt");
+        if (Files.exists(current)) legacy.add(current);
+        if (legacy.isEmpty()) return;
+
+        List<String> lines = new ArrayList<>();
+        for (Path p : legacy) {
+            DataFiles.forEachLine(p, 0, Long.MAX_VALUE, line -> {
+                if (!line.startsWith("#")) lines.add(line);
+            });
+        }
+        recordLog.importLines(lines);
+
+        for (Path p : legacy)
+            Files.move(p, p.resolveSibling(p.getFileName() + ".migrated"));
+        System.out.println("Migrated " + lines.size() + " rental records into " + recordLog.getDir());
+    }
+
+    private static long legacyGeneration(Path archive) {
+        String name = archive.getFileName().toString();
+        return Long.parseLong(name.substring("rental_records.archive-".length(), name.length() - ".txt".length()));
+    }
 
-            writer.write("\n");
+    private boolean saveReservation(String line) {
+        checkpointLock.readLock().lock();
+        try {
+            return writeLine(reservationLog, line, metrics.saveReservation);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
 
+    private boolean saveRecords(List<RentalRecord> records) {
+        long start = metrics.start();
+        try {
+            recordLog.writeAll(records);
+            return true;
         } catch (IOException e) {
-            System.out.println("Error writing to vehicles.txt");
+            System.out.println("Error writing rental records: " + e.getMessage());
+            metrics.writeError("rental records: " + e.getMessage());
+            return false;
+        } finally {
+            metrics.stop(metrics.saveRecord, start);
         }
     }
 
-    private void saveCustomer(Customer customer) {
-        try (FileWriter writer = new FileWriter("customers.txt", true)) {
-            writer.write(customer.getCustomerId() + "," +
-                         customer.getCustomerName() + "\n");
+    // Appends every line, then waits once for all of them.
+    private boolean writeLines(WriteAheadLog log, List<String> lines, LatencyHistogram timer) {
+        long start = metrics.start();
+        try {
+            long last = 0;
+            for (String line : lines) last = log.append(line);
+            log.await(last);
+            return true;
         } catch (IOException e) {
-            System.out.println("Error writing to customers.txt");
+            System.out.println("Error writing to " + log.getPath().getFileName() + ": " + e.getMessage());
+            metrics.writeError(log.getPath().getFileName() + ": " + e.getMessage());
+            return false;
+        } finally {
+            metrics.stop(timer, start);
         }
     }
 
-    private void saveRecord(RentalRecord record) {
-        try (FileWriter writer = new FileWriter("rental_records.txt", true)) {
-            writer.write(record.getRecordType() + "," +
-                         record.getVehicle().getLicensePlate() + "," +
-                         record.getCustomer().getCustomerId() + "," +
-                         record.getRecordDate() + "," +
-                         record.getTotalAmount() + "\n");
+    private boolean writeLine(WriteAheadLog log, String line, LatencyHistogram timer) {
+        long start = metrics.start();
+        try {
+            log.write(line);
+            return true;
         } catch (IOException e) {
-            System.out.println("Error writing to rental_records.txt");
+            System.out.println("Error writing to " + log.getPath().getFileName() + ": " + e.getMessage());
+            metrics.writeError(log.getPath().getFileName() + ": " + e.getMessage());
+            return false;
+        } finally {
+            metrics.stop(timer, start);
         }
     }
 
-    // LOAD METHODS
-    
-    private void loadData() {
-        loadVehicles();
-        loadCustomers();
-        loadRentalRecords();
+    static String formatVehicle(Vehicle vehicle) {
+        String type;
+        if (vehicle instanceof Car) type = "Car";
+        else if (vehicle instanceof Minibus) type = "Minibus";
+        else if (vehicle instanceof PickupTruck) type = "PickupTruck";
+        else type = "Unknown";
+
+        StringBuilder line = new StringBuilder();
+        line.append(type).append(',')
+            .append(vehicle.getLicensePlate()).append(',')
+            .append(vehicle.getMake()).append(',')
+            .append(vehicle.getModel()).append(',')
+            .append(vehicle.getYear());
+
+        if (vehicle instanceof Car) {
+            line.append(',').append(((Car) vehicle).getNumSeats());
+        } else if (vehicle instanceof Minibus) {
+            line.append(',').append(((Minibus) vehicle).isAccessible());
+        } else if (vehicle instanceof PickupTruck) {
+            PickupTruck p = (PickupTruck) vehicle;
+            line.append(',').append(p.getCargoSize()).append(',').append(p.hasTrailer());
+        }
+        return line.toString();
+    }
+
+    // JOURNAL
+    // Rents, returns and new vehicles and customers are published to the
+    // journal and handled by three stages, in order:
+    //   persistence  writes each batch with one wait per data file, so
+    //                concurrent changes share a write (and an fsync)
+    //   history      adds records to rentalHistory and the dashboard totals
+    //   metrics      times each event from publish to here
+    // A writer publishes while holding the checkpoint read lock and waits
+    // there for the history stage, so a call that succeeds is durable and
+    // visible to queries, and a snapshot (write lock) never sees a change
+    // that is still in flight. Writers block while the journal is full.
+
+    private static final int HISTORY_STAGE = 1;
+
+    private EventJournal<RentalEvent> openJournal() {
+        List<EventJournal.Handler<RentalEvent>> stages = new ArrayList<>();
+        stages.add(new Persister());
+        stages.add(this::applyEvent);
+        stages.add((event, sequence, endOfBatch) -> metrics.journalEvent(event.publishedAt, endOfBatch));
+        return new EventJournal<>("rental-journal", config.getJournalSize(), RentalEvent::new, stages);
     }
 
-    private void loadVehicles() {
-        File file = new File("vehicles.txt");
-        if (!file.exists()) return;
+    // Caller holds the checkpoint read lock.
+    private long publish(RentalEvent.Kind kind, RentalRecord record, String line) {
+        long sequence = journal.claim();
+        journal.get(sequence).set(kind, record, line, metrics.start());
+        journal.publish(sequence);
+        return sequence;
+    }
+
+    private final class Persister implements EventJournal.Handler<RentalEvent> {
+        private final List<RentalRecord> records = new ArrayList<>();
+        private final List<String> vehicleLines = new ArrayList<>();
+        private final List<String> customerLines = new ArrayList<>();
+        private long first = -1;
+
+        @Override
+        public void onEvent(RentalEvent event, long sequence, boolean endOfBatch) {
+            if (first < 0) first = sequence;
+            switch (event.kind) {
+                case RECORD:   records.add(event.record); break;
+                case VEHICLE:  vehicleLines.add(event.line); break;
+                case CUSTOMER: customerLines.add(event.line); break;
+            }
+            if (!endOfBatch) return;
+
+            // if a write throws, the journal fails the whole batch; it must not carry over
+            try {
+                if (!records.isEmpty() && !saveRecords(records))
+                    fail(first, sequence, RentalEvent.Kind.RECORD);
+                if (!vehicleLines.isEmpty() && !writeLines(vehicleLog, vehicleLines, metrics.saveVehicle))
+                    fail(first, sequence, RentalEvent.Kind.VEHICLE);
+                if (!customerLines.isEmpty() && !writeLines(customerLog, customerLines, metrics.saveCustomer))
+                    fail(first, sequence, RentalEvent.Kind.CUSTOMER);
+            } finally {
+                records.clear();
+                vehicleLines.clear();
+                customerLines.clear();
+                first = -1;
+            }
+        }
 
-        try (Scanner scanner = new Scanner(file)) {
+        private void fail(long from, long to, RentalEvent.Kind kind) {
+            for (long s = from; s <= to; s++)
+                if (journal.get(s).kind == kind) journal.fail(s);
+        }
+    }
 
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
+    private void applyEvent(RentalEvent event, long sequence, boolean endOfBatch) {
+        if (event.kind != RentalEvent.Kind.RECORD || journal.isFailed(sequence)) return;
+        RentalRecord rec = event.record;
+        rentalHistory.addRecord(rec);
+        stats.record((int) rec.getRecordDate().toEpochDay(), RecordFormat.toCents(rec.getTotalAmount()),
+                RecordType.parse(rec.getRecordType()));
+    }
 
-                String[] parts = line.split(",");
+    // SNAPSHOTS & COMPACTION
+
+    // Queues a background compaction once enough records have been written since the last snapshot.
+    private void recordWritten() {
+        long every = config.getSnapshotEvery();
+        if (every <= 0 || recordsSinceSnapshot.incrementAndGet() < every) return;
+
+        if (compactionQueued.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.out.println("Error compacting rental records: " + e.getMessage());
+                } finally {
+                    compactionQueued.set(false);
+                }
+            });
+        }
+    }
 
-                if (parts.length < 5) continue;
+    // Writes a snapshot of the current fleet, customers and statuses.
+    public void snapshot() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            writeSnapshot();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
 
-                String type  = parts[0];
-                String plate = parts[1];
-                String make  = parts[2];
-                String model = parts[3];
-                int year     = Integer.parseInt(parts[4]);
+    // Seals the open segment, snapshots the current state, then moves every
+    // segment the snapshot fully covers into rental_records/archive/.
+    public void compact() throws IOException {
+        try {
+            ensureFullHistory(); // archived segments are only read back for covered history
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        rentalHistory.freezeBefore(LocalDate.now());
+
+        checkpointLock.writeLock().lock();
+        try {
+            recordLog.roll();
+            long position = writeSnapshot();
+            // a crash before this point just leaves covered segments live; replay skips them
+            recordLog.archiveBefore(position);
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
 
-                Vehicle v = null;
+    // Caller must hold the checkpoint write lock. Returns the record position covered.
+    private long writeSnapshot() throws IOException {
+        long start = metrics.start();
+        long position = recordLog.position();
+        Snapshot snapshot = new Snapshot(vehicleLog.size(), customerLog.size(), position, recordLog.getFormat());
+        for (Vehicle v : vehicles)
+            snapshot.addVehicle(formatVehicle(v), v.getStatus());
+        for (Customer c : customers)
+            snapshot.addCustomer(c.getCustomerId() + "," + c.getCustomerName());
+        stats.writeTo(snapshot);
 
-                if ("Car".equalsIgnoreCase(type) && parts.length >= 6) {
-                    int seats = Integer.parseInt(parts[5]);
-                    v = new Car(make, model, year, seats);
-                }
-                else if ("Minibus".equalsIgnoreCase(type) && parts.length >= 6) {
-                    boolean accessible = Boolean.parseBoolean(parts[5]);
-                    v = new Minibus(make, model, year, accessible);
-                }
-                else if ("PickupTruck".equalsIgnoreCase(type) && parts.length >= 7) {
-                    double cargoSize = Double.parseDouble(parts[5]);
-                    boolean hasTrailer = Boolean.parseBoolean(parts[6]);
-                    v = new PickupTruck(make, model, year, cargoSize, hasTrailer);
-                }
+        snapshot.write(config.resolve(SNAPSHOT_FILE));
+        recordsSinceSnapshot.set(0);
+        metrics.stop(metrics.snapshot, start);
+        return position;
+    }
 
-                if (v != null) {
-                    v.setLicensePlate(plate);
-                    vehicles.add(v);
-                }
+    // Segments whose checksum, record count or header did not match during the last load.
+    public List<Path> getCorruptSegments() {
+        return Collections.unmodifiableList(corruptSegments);
+    }
+
+    // LOAD METHODS
+    // With a snapshot, startup restores its state and only reads the parts of
+    // each file written after it. Without one, everything is replayed.
+    // Record segments are parsed in parallel and merged back in log order.
+
+    private void loadData() {
+        long start = metrics.start();
+        Snapshot snapshot = null;
+        try {
+            snapshot = Snapshot.read(config.resolve(SNAPSHOT_FILE));
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot, replaying full history: " + e.getMessage());
+            metrics.loadError(SNAPSHOT_FILE + ": " + e.getMessage());
+        }
+
+        if (snapshot != null && snapshot.getRecordFormat() != recordLog.getFormat()) {
+            System.out.println("Snapshot was taken for the " + snapshot.getRecordFormat()
+                    + " record log, replaying full history");
+            snapshot = null;
+        }
+        if (snapshot != null) {
+            restoreSnapshot(snapshot, start);
+            return;
+        }
+
+        loadVehicles(0);
+        loadCustomers(0);
+        try {
+            loadRentalRecords(recordLog.listAll(), 0, Long.MAX_VALUE, rentalHistory, true);
+        } catch (IOException e) {
+            System.out.println("Error loading rental records: " + e.getMessage());
+            metrics.loadError("rental records: " + e.getMessage());
+        }
+    }
+
+    // readStart is when reading the snapshot file began; loadSnapshot times reading plus restoring.
+    private void restoreSnapshot(Snapshot snapshot, long readStart) {
+        for (int i = 0; i < snapshot.getVehicleLines().size(); i++) {
+            Vehicle v = parseVehicle(snapshot.getVehicleLines().get(i));
+            if (v != null) {
+                v.setStatus(snapshot.getStatuses().get(i));
+                indexVehicle(v);
+            }
+        }
+        for (String line : snapshot.getCustomerLines())
+            indexCustomer(parseCustomer(line));
+        stats.restore(snapshot);
+        metrics.stop(metrics.loadSnapshot, readStart);
+
+        loadVehicles(snapshot.getVehiclesOffset());
+        loadCustomers(snapshot.getCustomersOffset());
+        try {
+            loadRentalRecords(recordLog.listSegments(), snapshot.getRecordsPosition(), Long.MAX_VALUE, rentalHistory, true);
+        } catch (IOException e) {
+            System.out.println("Error loading rental records: " + e.getMessage());
+            metrics.loadError("rental records: " + e.getMessage());
+        }
+
+        coveredPosition = snapshot.getRecordsPosition();
+        historyComplete = false;
+    }
+
+    // Records covered by the snapshot are only read when the full history is
+    // needed. If they cannot be read, the history query fails with an
+    // UncheckedIOException and the next one tries again.
+    private void ensureFullHistory() throws UncheckedIOException {
+        if (historyComplete) return;
+
+        synchronized (rentalHistory) {
+            if (historyComplete) return;
+
+            RentalHistory covered = newHistory();
+            try {
+                loadRentalRecords(recordLog.listAll(), 0, coveredPosition, covered, false);
+            } catch (IOException e) {
+                System.out.println("Error loading rental records: " + e.getMessage());
+                metrics.loadError("rental records: " + e.getMessage());
+                throw new UncheckedIOException("Rental history is incomplete: " + e.getMessage(), e);
             }
 
-        } catch (Exception e) {
+            rentalHistory.prependAll(covered);
+            historyComplete = true;
+        }
+    }
+
+    private void loadVehicles(long from) {
+        long start = metrics.start();
+        try (CsvReader in = CsvReader.open(config.resolve("vehicles.txt"), from, Long.MAX_VALUE)) {
+            while (in.next()) {
+                try {
+                    Vehicle v = parseVehicle(in);
+                    if (v != null) indexVehicle(v);
+                } catch (RuntimeException e) {
+                    System.out.println("Error: bad vehicle at vehicles.txt line " + in.getLineNumber()
+                            + ": " + e.getMessage());
+                    metrics.loadError("vehicles.txt line " + in.getLineNumber() + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
             System.out.println("Error loading vehicles: " + e.getMessage());
+            metrics.loadError("vehicles.txt: " + e.getMessage());
         }
+        metrics.stop(metrics.loadVehicles, start);
     }
 
-    private void loadCustomers() {
-        File file = new File("customers.txt");
-        if (!file.exists()) return;
+    static Vehicle parseVehicle(String line) {
+        try (CsvReader in = CsvReader.of(line)) {
+            return in.next() ? parseVehicle(in) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        try (Scanner scanner = new Scanner(file)) {
+    private static Vehicle parseVehicle(CsvReader in) {
+        int fields = in.fieldCount();
+        if (fields < 5) return null;
 
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
+        int plate   = in.plateField(1);
+        String make  = in.dictionaryField(2, StringDictionary.MAKES);
+        String model = in.dictionaryField(3, StringDictionary.MODELS);
+        int year     = in.intField(4);
 
-                String[] parts = line.split(",", 2);
-                if (parts.length < 1) continue;
+        Vehicle v = null;
 
-                int id = Integer.parseInt(parts[0]);
-                String name = (parts.length > 1) ? parts[1] : "";
+        if (in.equalsIgnoreCase(0, "Car") && fields >= 6) {
+            int seats = in.intField(5);
+            v = new Car(make, model, year, seats);
+        }
+        else if (in.equalsIgnoreCase(0, "Minibus") && fields >= 6) {
+            boolean accessible = in.booleanField(5);
+            v = new Minibus(make, model, year, accessible);
+        }
+        else if (in.equalsIgnoreCase(0, "PickupTruck") && fields >= 7) {
+            double cargoSize = in.doubleField(5);
+            boolean hasTrailer = in.booleanField(6);
+            v = new PickupTruck(make, model, year, cargoSize, hasTrailer);
+        }
 
-                customers.add(new Customer(id, name));
-            }
+        if (v != null) v.setPackedPlate(plate);
+        return v;
+    }
 
-        } catch (Exception e) {
+    private void loadCustomers(long from) {
+        long start = metrics.start();
+        try (CsvReader in = CsvReader.open(config.resolve("customers.txt"), from, Long.MAX_VALUE)) {
+            while (in.next()) {
+                try {
+                    indexCustomer(parseCustomer(in));
+                } catch (RuntimeException e) {
+                    System.out.println("Error: bad customer at customers.txt line " + in.getLineNumber()
+                            + ": " + e.getMessage());
+                    metrics.loadError("customers.txt line " + in.getLineNumber() + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
             System.out.println("Error loading customers: " + e.getMessage());
+            metrics.loadError("customers.txt: " + e.getMessage());
         }
+        metrics.stop(metrics.loadCustomers, start);
     }
 
-    private void loadRentalRecords() {
-        File file = new File("rental_records.txt");
-        if (!file.exists()) return;
-
-        try (Scanner scanner = new Scanner(file)) {
-
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
+    static Customer parseCustomer(String line) {
+        try (CsvReader in = CsvReader.of(line)) {
+            in.next();
+            return parseCustomer(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-                String[] parts = line.split(",");
-                if (parts.length < 5) continue;
+    private static Customer parseCustomer(CsvReader in) {
+        int id = in.intField(0);
+        String name = (in.fieldCount() > 1) ? in.rest(1) : "";
 
-                String recordType = parts[0];
-                String plate      = parts[1];
-                int customerId    = Integer.parseInt(parts[2]);
-                LocalDate date    = LocalDate.parse(parts[3]);
-                double amount     = Double.parseDouble(parts[4]);
+        return new Customer(id, name);
+    }
 
-                Vehicle v = findVehicleByPlate(plate);
-                Customer c = findCustomerById(customerId);
+    // Loads records in [from, to) (log positions) from the given segments.
+    private void loadRentalRecords(List<Path> segments, long from, long to, RentalHistory target, boolean replayStatus) {
+        long start = metrics.start();
+        List<Path> inRange = new ArrayList<>();
+        for (Path p : segments) {
+            long index = SegmentedRecordLog.segmentIndex(p);
+            if (index >= from / SegmentedRecordLog.SEGMENT_SPAN && index <= to / SegmentedRecordLog.SEGMENT_SPAN)
+                inRange.add(p);
+        }
 
-                if (v == null || c == null) continue;
+        // parse in parallel; the ordered stream keeps the per-segment batches in log order
+        List<RentalHistory> parsed = inRange.parallelStream()
+                .map(p -> parseSegment(p, from, to))
+                .collect(Collectors.toList());
 
-                RentalRecord rec = new RentalRecord(v, c, date, amount, recordType);
-                rentalHistory.addRecord(rec);
+        for (RentalHistory batch : parsed) {
+            target.addAll(batch);
+            if (!replayStatus) continue;
 
-                if ("RENT".equalsIgnoreCase(recordType)) {
+            // per-vehicle order is preserved because segments are applied in sequence
+            for (int i = 0; i < batch.size(); i++) {
+                stats.record(batch.epochDayAt(i), batch.centsAt(i), batch.typeAt(i));
+                Vehicle v = batch.vehicleAt(i);
+                if (batch.typeAt(i) == RecordType.RENT) {
                     v.setStatus(Vehicle.VehicleStatus.Rented);
-                } else if ("RETURN".equalsIgnoreCase(recordType)) {
+                } else {
                     v.setStatus(Vehicle.VehicleStatus.Available);
                 }
             }
+        }
+        metrics.stop(metrics.loadRentalRecords, start);
+    }
 
-        } catch (Exception e) {
-            System.out.println("Error loading rental records: " + e.getMessage());
+    private RentalHistory parseSegment(Path segment, long from, long to) {
+        long index = SegmentedRecordLog.segmentIndex(segment);
+        long fromOffset = index == from / SegmentedRecordLog.SEGMENT_SPAN ? from % SegmentedRecordLog.SEGMENT_SPAN : 0;
+        long toOffset = index == to / SegmentedRecordLog.SEGMENT_SPAN ? to % SegmentedRecordLog.SEGMENT_SPAN : Long.MAX_VALUE;
+
+        if (recordLog.getFormat() == RecordFormat.BINARY)
+            return mapSegment(segment, fromOffset, toOffset);
+
+        RentalHistory batch = newHistory();
+        ByteBuffer body;
+        try {
+            body = recordLog.readBody(segment, fromOffset, toOffset);
+        } catch (SegmentedRecordLog.CorruptSegmentException e) {
+            corruptSegments.add(segment);
+            System.out.println("Error: " + e.getMessage() + " - its records were not loaded");
+            metrics.loadError(e.getMessage());
+            return batch;
+        } catch (IOException e) {
+            System.out.println("Error reading " + segment.getFileName() + ": " + e.getMessage());
+            metrics.loadError(segment.getFileName() + ": " + e.getMessage());
+            return batch;
         }
+
+        try (CsvReader in = CsvReader.of(body)) {
+            while (in.next()) {
+                try {
+                    if (in.fieldCount() < 5) continue;
+
+                    RecordType type = in.enumField(0, RECORD_TYPES);
+                    if (type == null) throw new IllegalArgumentException("unknown record type " + in.string(0));
+
+                    int plate      = in.plateField(1);
+                    int customerId = in.intField(2);
+                    int epochDay   = in.epochDayField(3);
+                    double amount  = in.doubleField(4);
+
+                    Vehicle v = plate < 0 ? null : vehiclesByPlate.get(plate);
+                    Customer c = customersById.get(customerId);
+
+                    if (v == null || c == null) continue;
+
+                    batch.add(v, c, epochDay, RecordFormat.toCents(amount), type);
+                } catch (RuntimeException e) {
+                    System.out.println("Error: bad record at " + segment.getFileName() + " line " + in.getLineNumber()
+                            + ": " + e.getMessage());
+                    metrics.loadError(segment.getFileName() + " line " + in.getLineNumber() + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading " + segment.getFileName() + ": " + e.getMessage());
+            metrics.loadError(segment.getFileName() + ": " + e.getMessage());
+        }
+        return batch;
+    }
+
+    // Binary segments are copied straight from the mapped file into columns:
+    // plates are looked up by their packed form and no text is parsed.
+    private RentalHistory mapSegment(Path segment, long fromOffset, long toOffset) {
+        RentalHistory batch = newHistory();
+        MappedRecords mapped;
+        try {
+            mapped = recordLog.map(segment, fromOffset, toOffset);
+        } catch (SegmentedRecordLog.CorruptSegmentException e) {
+            corruptSegments.add(segment);
+            System.out.println("Error: " + e.getMessage() + " - its records were not loaded");
+            metrics.loadError(e.getMessage());
+            return batch;
+        } catch (IOException e) {
+            System.out.println("Error reading " + segment.getFileName() + ": " + e.getMessage());
+            metrics.loadError(segment.getFileName() + ": " + e.getMessage());
+            return batch;
+        }
+
+        RecordType[] types = RecordType.values();
+        for (int i = 0; i < mapped.size(); i++) {
+            Vehicle v = vehiclesByPlate.get(mapped.packedPlate(i));
+            Customer c = customersById.get(mapped.customerId(i));
+            int type = mapped.type(i);
+            if (v == null || c == null || type < 0 || type >= types.length) continue;
+
+            batch.add(v, c, mapped.epochDay(i), mapped.cents(i), types[type]);
+        }
+        return batch;
+    }
+
+    // Visits every logged record as primitives, without building RentalRecord objects.
+    // With the BINARY format this reads the mapped segment files directly.
+    public void scanRecords(RecordVisitor visitor) throws IOException {
+        recordLog.scan(visitor);
     }
 
 }
@@ -0,0 +1,36 @@
+import java.time.LocalDate;
+
+// A booking of one vehicle for a customer over a date range (both ends inclusive).
+public class Reservation {
+    private final int id;
+    private final Vehicle vehicle;
+    private final Customer customer;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    public Reservation(int id, Vehicle vehicle, Customer customer, LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate))
+            throw new IllegalArgumentException("Reservation ends before it starts");
+        this.id = id;
+        this.vehicle = vehicle;
+        this.customer = customer;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public int getId() { return id; }
+    public Vehicle getVehicle() { return vehicle; }
+    public Customer getCustomer() { return customer; }
+    public LocalDate getStartDate() { return startDate; }
+    public LocalDate getEndDate() { return endDate; }
+
+    public boolean covers(LocalDate date) {
+        return !date.isBefore(startDate) && !date.isAfter(endDate);
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation " + id + " | " + vehicle.getLicensePlate() + " | " + customer.getCustomerName()
+                + " | " + startDate + " to " + endDate;
+    }
+}
@@ -0,0 +1,52 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Reservations of one vehicle, ordered by start date.
+//
+// A vehicle's reservations never overlap, so this is an interval tree over
+// disjoint intervals: the only reservation that can overlap [from, to] is the
+// last one starting on or before `to`, and every check is one O(log n) lookup.
+public class ReservationCalendar {
+    private final TreeMap<LocalDate, Reservation> byStart = new TreeMap<>();
+
+    // The reservation overlapping [from, to], or null if the range is free.
+    public synchronized Reservation conflict(LocalDate from, LocalDate to) {
+        Map.Entry<LocalDate, Reservation> last = byStart.floorEntry(to);
+        if (last == null || last.getValue().getEndDate().isBefore(from)) return null;
+        return last.getValue();
+    }
+
+    public boolean isFree(LocalDate from, LocalDate to) {
+        return conflict(from, to) == null;
+    }
+
+    // Adds the reservation unless it overlaps an existing one.
+    public synchronized boolean add(Reservation reservation) {
+        if (conflict(reservation.getStartDate(), reservation.getEndDate()) != null) return false;
+        byStart.put(reservation.getStartDate(), reservation);
+        return true;
+    }
+
+    public synchronized boolean remove(Reservation reservation) {
+        return byStart.remove(reservation.getStartDate(), reservation);
+    }
+
+    public Reservation covering(LocalDate date) {
+        return conflict(date, date);
+    }
+
+    // Drops reservations that ended before the given date; they are a prefix of the calendar.
+    public synchronized List<Reservation> removeEndedBefore(LocalDate date) {
+        List<Reservation> ended = new ArrayList<>();
+        while (!byStart.isEmpty() && byStart.firstEntry().getValue().getEndDate().isBefore(date))
+            ended.add(byStart.pollFirstEntry().getValue());
+        return ended;
+    }
+
+    public synchronized List<Reservation> list() {
+        return new ArrayList<>(byStart.values());
+    }
+}
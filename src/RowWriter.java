@@ -0,0 +1,184 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+// Text output for listings and exports. Rows are formatted into one reused
+// StringBuilder and write() hands everything buffered to the underlying
+// Writer in a single call, so a caller writes once per page of rows rather
+// than once per row. Numbers, plates, dates and amounts are appended from
+// their primitive form without building Strings.
+public final class RowWriter implements Flushable, Closeable {
+    private final Writer out;
+    private final boolean ownsOut;
+    private final String newline;
+    private final StringBuilder buf = new StringBuilder(16 * 1024);
+    private char[] chars = new char[0];
+
+    // records arrive mostly in date order, so the last date is kept formatted
+    private int lastDay = Integer.MIN_VALUE;
+    private String lastDate;
+
+    private RowWriter(Writer out, boolean ownsOut, String newline) {
+        this.out = out;
+        this.ownsOut = ownsOut;
+        this.newline = newline;
+    }
+
+    // Writes to System.out, which close() leaves open.
+    public static RowWriter console() {
+        return new RowWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), false,
+                System.lineSeparator());
+    }
+
+    // Writes to any Writer, which close() leaves open; lines end in \n.
+    public static RowWriter of(Writer out) {
+        return new RowWriter(out, false, "\n");
+    }
+
+    // Creates or truncates the file; lines end in \n like the data files.
+    public static RowWriter file(Path path) throws IOException {
+        return new RowWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), true, "\n");
+    }
+
+    public RowWriter append(char c) {
+        buf.append(c);
+        return this;
+    }
+
+    public RowWriter append(CharSequence text) {
+        buf.append(text);
+        return this;
+    }
+
+    public RowWriter append(long n) {
+        buf.append(n);
+        return this;
+    }
+
+    // A packed plate (Vehicle.packPlate) as its 6 characters.
+    public RowWriter plate(int packed) {
+        int at = buf.length();
+        buf.append("000000");
+        for (int i = 5; i >= 3; i--) {
+            buf.setCharAt(at + i, (char) ('0' + packed % 10));
+            packed /= 10;
+        }
+        for (int i = 2; i >= 0; i--) {
+            buf.setCharAt(at + i, (char) ('A' + packed % 26));
+            packed /= 26;
+        }
+        return this;
+    }
+
+    // An epoch day as yyyy-MM-dd.
+    public RowWriter date(int epochDay) {
+        if (epochDay != lastDay) {
+            lastDate = LocalDate.ofEpochDay(epochDay).toString();
+            lastDay = epochDay;
+        }
+        buf.append(lastDate);
+        return this;
+    }
+
+    // An amount in cents with two decimals, as %.2f would print it.
+    public RowWriter money(long cents) {
+        if (cents < 0) {
+            buf.append('-');
+            cents = -cents;
+        }
+        buf.append(cents / 100).append('.');
+        if (cents % 100 < 10) buf.append('0');
+        buf.append(cents % 100);
+        return this;
+    }
+
+    // The buffer position, for padTo once a cell has been appended.
+    public int mark() {
+        return buf.length();
+    }
+
+    // Left-aligns what was appended since the mark in a cell of the width, like %-<width>s.
+    public RowWriter padTo(int mark, int width) {
+        for (int n = buf.length() - mark; n < width; n++) buf.append(' ');
+        return this;
+    }
+
+    public RowWriter cell(CharSequence text, int width) {
+        int at = mark();
+        buf.append(text);
+        return padTo(at, width);
+    }
+
+    // A CSV field, quoted only if it contains a comma, quote or line break.
+    public RowWriter csv(CharSequence text) {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) return append(text);
+
+        buf.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') buf.append('"');
+            buf.append(c);
+        }
+        buf.append('"');
+        return this;
+    }
+
+    // A quoted JSON string.
+    public RowWriter json(CharSequence text) {
+        buf.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf.append('\\').append(c);
+            } else if (c < 0x20) {
+                buf.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+            } else {
+                buf.append(c);
+            }
+        }
+        buf.append('"');
+        return this;
+    }
+
+    public RowWriter endRow() {
+        buf.append(newline);
+        return this;
+    }
+
+    // Hands everything buffered to the underlying Writer in one call.
+    public void write() throws IOException {
+        int n = buf.length();
+        if (n == 0) return;
+        if (chars.length < n) chars = new char[Math.max(n, chars.length * 2)];
+        buf.getChars(0, n, chars, 0);
+        out.write(chars, 0, n);
+        buf.setLength(0);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        write();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (ownsOut) out.close();
+        }
+    }
+}
@@ -0,0 +1,425 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// Rental record log split into numbered segment files under one directory.
+//
+// Each segment starts with a fixed-width header line
+//   #SEGMENT,<index>,<recordCount>,<crc32 of body>
+// written with a zero count while the segment is open and rewritten in place
+// when it is sealed. A segment is sealed once it holds segmentRecords records.
+// The body is encoded in the configured RecordFormat.
+// Positions in the log are encoded as segment * SEGMENT_SPAN + byte offset.
+public class SegmentedRecordLog implements Closeable {
+
+    public static final long SEGMENT_SPAN = 1L << 40;
+    static final int HEADER_LENGTH = 40;
+
+    private final Path dir;
+    private final Path archiveDir;
+    private final RentalConfig config;
+    private final RecordFormat format;
+    private final ReentrantReadWriteLock rollLock = new ReentrantReadWriteLock();
+    private final AtomicLong currentCount = new AtomicLong();
+
+    private WriteAheadLog current;
+    private long currentIndex;
+
+    public SegmentedRecordLog(Path dir, RecordFormat format, RentalConfig config) throws IOException {
+        this.dir = dir;
+        this.archiveDir = dir.resolve("archive");
+        this.format = format;
+        this.config = config;
+        Files.createDirectories(archiveDir);
+    }
+
+    // Opens the newest segment for appending, or starts the first one.
+    public void open() throws IOException {
+        List<Path> live = listSegments();
+        if (live.isEmpty()) {
+            startSegment(firstFreeIndex());
+            return;
+        }
+
+        Path last = live.get(live.size() - 1);
+        Header header = readHeader(last);
+        if (header.isSealed()) {
+            startSegment(header.index + 1);
+        } else {
+            currentIndex = header.index;
+            // cut off a record torn by a crash, or the next append would run on from it
+            try (FileChannel c = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer body = body(c);
+                int complete = format.completeLength(body.duplicate());
+                if (complete < body.remaining()) {
+                    c.truncate(HEADER_LENGTH + complete);
+                    c.force(true);
+                    body.limit(complete);
+                    System.out.println("Warning: removed incomplete last record from " + last.getFileName());
+                }
+                currentCount.set(format.countRecords(body));
+            }
+            current = openWal(last);
+        }
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public RecordFormat getFormat() {
+        return format;
+    }
+
+    // Appends one record and returns once it is durable under the configured policy.
+    public void write(RentalRecord record) throws IOException {
+        byte[] entry = format.encode(record);
+        boolean full;
+        rollLock.readLock().lock();
+        try {
+            current.write(entry);
+            full = currentCount.incrementAndGet() == config.getSegmentRecords();
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        if (full) roll();
+    }
+
+    // Appends the records in order and returns once all of them are durable:
+    // one wait, and at most one fsync, per segment they land in.
+    public void writeAll(List<RentalRecord> records) throws IOException {
+        int next = 0;
+        while (next < records.size()) {
+            boolean full = false;
+            rollLock.readLock().lock();
+            try {
+                long last = 0;
+                while (next < records.size() && !full) {
+                    last = current.append(format.encode(records.get(next++)));
+                    full = currentCount.incrementAndGet() == config.getSegmentRecords();
+                }
+                current.await(last);
+            } finally {
+                rollLock.readLock().unlock();
+            }
+            if (full) roll();
+        }
+    }
+
+    // Position just past the last durable record.
+    public long position() throws IOException {
+        rollLock.readLock().lock();
+        try {
+            current.sync();
+            return currentIndex * SEGMENT_SPAN + current.size();
+        } finally {
+            rollLock.readLock().unlock();
+        }
+    }
+
+    // Seals the open segment and starts the next one (no-op if it is empty).
+    public void roll() throws IOException {
+        rollLock.writeLock().lock();
+        try {
+            if (currentCount.get() == 0) return;
+            sealAndAdvance();
+        } finally {
+            rollLock.writeLock().unlock();
+        }
+    }
+
+    // Moves every live segment before the given position's segment into archive/.
+    public void archiveBefore(long position) throws IOException {
+        long segment = position / SEGMENT_SPAN;
+        for (Path p : listSegments()) {
+            if (segmentIndex(p) >= segment) break;
+            Files.move(p, archiveDir.resolve(p.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    public List<Path> listSegments() throws IOException {
+        return list(dir);
+    }
+
+    public List<Path> listArchived() throws IOException {
+        return list(archiveDir);
+    }
+
+    // Archived segments followed by live ones, in log order.
+    public List<Path> listAll() throws IOException {
+        List<Path> all = listArchived();
+        all.addAll(listSegments());
+        return all;
+    }
+
+    // Maps a segment and returns the body bytes between two offsets (0 and
+    // Long.MAX_VALUE for all of it). Sealed segments have their checksum and
+    // record count verified; a torn tail in an open segment is dropped and reported.
+    public ByteBuffer readBody(Path segment, long fromOffset, long toOffset) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel c = FileChannel.open(segment, StandardOpenOption.READ)) {
+            mapped = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+        }
+        byte[] headerBytes = new byte[Math.min(HEADER_LENGTH, mapped.limit())];
+        mapped.get(headerBytes);
+        Header header = parseHeader(segment, headerBytes);
+
+        ByteBuffer body = mapped.duplicate();
+        body.position(HEADER_LENGTH);
+
+        if (header.isSealed()) {
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != header.crc)
+                throw new CorruptSegmentException(segment, "checksum mismatch (expected "
+                        + Long.toHexString(header.crc) + ", found " + Long.toHexString(crc.getValue()) + ")");
+            long count = format.countRecords(body.duplicate());
+            if (count != header.count)
+                throw new CorruptSegmentException(segment, "header says " + header.count
+                        + " records, found " + count);
+        } else {
+            int complete = format.completeLength(body.duplicate());
+            if (complete < body.remaining()) {
+                body.limit(HEADER_LENGTH + complete);
+                System.out.println("Warning: dropped incomplete last record in " + segment.getFileName());
+            }
+        }
+
+        body.limit((int) Math.min(body.limit(), toOffset));
+        body.position((int) Math.min(body.limit(), Math.max(HEADER_LENGTH, fromOffset)));
+        return body.slice();
+    }
+
+    // CSV segments: the record lines in the given range.
+    public List<String> readLines(Path segment, long fromOffset, long toOffset) throws IOException {
+        ByteBuffer body = readBody(segment, fromOffset, toOffset);
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8).trim();
+            if (!line.isEmpty()) lines.add(line);
+            start = i + 1;
+        }
+        return lines;
+    }
+
+    // BINARY segments: a zero-copy view of the records in the given range.
+    public MappedRecords map(Path segment, long fromOffset, long toOffset) throws IOException {
+        return new MappedRecords(readBody(segment, fromOffset, toOffset));
+    }
+
+    // Visits every record in the log without building RentalRecord objects.
+    // Only BINARY logs are zero-copy; CSV lines are parsed on the way.
+    public void scan(RecordVisitor visitor) throws IOException {
+        for (Path segment : listAll()) {
+            if (format == RecordFormat.BINARY) {
+                map(segment, 0, Long.MAX_VALUE).forEach(visitor);
+                continue;
+            }
+            for (String line : readLines(segment, 0, Long.MAX_VALUE)) {
+                byte[] entry;
+                try {
+                    entry = RecordFormat.BINARY.encodeCsv(line);
+                } catch (RuntimeException e) {
+                    continue; // reported when the log was loaded
+                }
+                new MappedRecords(ByteBuffer.wrap(entry)).forEach(visitor);
+            }
+        }
+    }
+
+    // Copies CSV record lines into the log, e.g. when migrating an older
+    // format. Entries are buffered and only waited on once per segment.
+    // Lines that are not valid records are reported and skipped.
+    public void importLines(Iterable<String> lines) throws IOException {
+        rollLock.writeLock().lock();
+        try {
+            long last = 0;
+            for (String line : lines) {
+                byte[] entry;
+                try {
+                    entry = format.encodeCsv(line);
+                } catch (RuntimeException e) {
+                    System.out.println("Error: bad record skipped (" + line + "): " + e.getMessage());
+                    continue;
+                }
+                last = current.append(entry);
+                if (currentCount.incrementAndGet() == config.getSegmentRecords()) {
+                    current.await(last);
+                    sealAndAdvance();
+                    last = 0;
+                }
+            }
+            if (last > 0) current.await(last);
+        } finally {
+            rollLock.writeLock().unlock();
+        }
+    }
+
+    // Writes a complete segment with the given index and body, sealed unless it is
+    // the open (last live) one. Used by RecordLogConverter; the log must not be open.
+    void writeSegment(long index, byte[] body, boolean seal, boolean archived) throws IOException {
+        Path path = (archived ? archiveDir : dir).resolve(String.format("segment-%010d%s", index, format.getExtension()));
+        try (FileChannel c = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            c.write(ByteBuffer.wrap(formatHeader(index, 0, 0)));
+            c.write(ByteBuffer.wrap(body));
+            c.force(true);
+        }
+        if (seal && body.length > 0) seal(path, index);
+    }
+
+    public static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.lastIndexOf('.')));
+    }
+
+    @Override
+    public void close() throws IOException {
+        rollLock.writeLock().lock();
+        try {
+            if (current != null) current.close();
+        } finally {
+            rollLock.writeLock().unlock();
+        }
+    }
+
+    private void startSegment(long index) throws IOException {
+        Path path = dir.resolve(String.format("segment-%010d%s", index, format.getExtension()));
+        try (FileChannel c = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            c.write(ByteBuffer.wrap(formatHeader(index, 0, 0)));
+            c.force(true);
+        }
+        currentIndex = index;
+        currentCount.set(0);
+        current = openWal(path);
+    }
+
+    private void sealAndAdvance() throws IOException {
+        Path path = current.getPath();
+        current.close();
+        seal(path, currentIndex);
+        startSegment(currentIndex + 1);
+    }
+
+    private WriteAheadLog openWal(Path path) throws IOException {
+        return new WriteAheadLog(path, config.getDurability(), config.getSyncIntervalMs());
+    }
+
+    private void seal(Path path, long index) throws IOException {
+        try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer body = body(c);
+            long count = format.countRecords(body.duplicate());
+            CRC32 crc = new CRC32();
+            crc.update(body);
+
+            c.write(ByteBuffer.wrap(formatHeader(index, count, crc.getValue())), 0);
+            c.force(true);
+        }
+    }
+
+    private static ByteBuffer body(FileChannel c) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate((int) Math.max(0, c.size() - HEADER_LENGTH));
+        long pos = HEADER_LENGTH;
+        while (body.hasRemaining()) {
+            int n = c.read(body, pos);
+            if (n < 0) break;
+            pos += n;
+        }
+        body.flip();
+        return body;
+    }
+
+    private long firstFreeIndex() throws IOException {
+        List<Path> archived = listArchived();
+        return archived.isEmpty() ? 1 : segmentIndex(archived.get(archived.size() - 1)) + 1;
+    }
+
+    private static byte[] formatHeader(long index, long count, long crc) {
+        String header = String.format("#SEGMENT,%010d,%010d,%08x\n", index, count, crc);
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Header readHeader(Path segment) throws IOException {
+        byte[] bytes = new byte[HEADER_LENGTH];
+        int read = 0;
+        try (FileChannel c = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            int n;
+            while (buf.hasRemaining() && (n = c.read(buf)) > 0) read += n;
+        }
+        byte[] header = new byte[read];
+        System.arraycopy(bytes, 0, header, 0, read);
+        return parseHeader(segment, header);
+    }
+
+    private static Header parseHeader(Path segment, byte[] bytes) throws CorruptSegmentException {
+        if (bytes.length < HEADER_LENGTH)
+            throw new CorruptSegmentException(segment, "truncated header");
+        String text = new String(bytes, 0, HEADER_LENGTH - 1, StandardCharsets.US_ASCII);
+        String[] parts = text.split(",");
+        if (parts.length != 4 || !parts[0].equals("#SEGMENT"))
+            throw new CorruptSegmentException(segment, "bad header '" + text + "'");
+        try {
+            return new Header(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3], 16));
+        } catch (NumberFormatException e) {
+            throw new CorruptSegmentException(segment, "bad header '" + text + "'");
+        }
+    }
+
+    private List<Path> list(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "segment-*" + format.getExtension())) {
+            for (Path p : stream) segments.add(p);
+        }
+        segments.sort((a, b) -> Long.compare(segmentIndex(a), segmentIndex(b)));
+        return segments;
+    }
+
+    private static class Header {
+        final long index;
+        final long count;
+        final long crc;
+
+        Header(long index, long count, long crc) {
+            this.index = index;
+            this.count = count;
+            this.crc = crc;
+        }
+
+        boolean isSealed() {
+            return count > 0;
+        }
+    }
+
+    public static class CorruptSegmentException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path segment;
+
+        public CorruptSegmentException(Path segment, String message) {
+            super("Corrupt segment " + segment.getFileName() + ": " + message);
+            this.segment = segment;
+        }
+
+        public Path getSegment() {
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SegmentedRecordLogTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void testReopenAfterTornCsvWrite() throws Exception {
+        reopenAfterTornWrite(RecordFormat.CSV, "RENT,ABC".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReopenAfterTornBinaryWrite() throws Exception {
+        reopenAfterTornWrite(RecordFormat.BINARY, new byte[7]);
+    }
+
+    // A crash leaves part of a record at the end of the open segment. The
+    // next start must cut it off, so the records written after it survive.
+    private void reopenAfterTornWrite(RecordFormat format, byte[] torn) throws Exception {
+
+        RentalConfig config = new RentalConfig();
+        config.setDataDir(dataDir);
+        config.setMetrics(false);
+        config.setRecordFormat(format);
+        config.setSnapshotEvery(0);
+
+        Customer customer = new Customer(1, "Torn Write");
+        Vehicle car = new Car("Test", "Car", 2020, 4);
+        car.setLicensePlate("ABC123");
+        try (RentalSystem system = new RentalSystem(config)) {
+            assertTrue(system.addVehicle(car));
+            assertTrue(system.addCustomer(customer));
+            assertTrue(system.rentVehicle(car, customer, LocalDate.now(), 10));
+        }
+
+        Files.write(lastSegment(config.resolve(format.getDirectory())), torn, StandardOpenOption.APPEND);
+
+        try (RentalSystem system = new RentalSystem(config)) {
+            Vehicle v = system.findVehicleByPlate("ABC123");
+            assertEquals(Vehicle.VehicleStatus.Rented, v.getStatus());
+            assertTrue(system.returnVehicle(v, system.findCustomerById(1), LocalDate.now(), 0));
+        }
+
+        try (RentalSystem system = new RentalSystem(config)) {
+            Vehicle v = system.findVehicleByPlate("ABC123");
+            assertEquals(Vehicle.VehicleStatus.Available, v.getStatus());
+            assertEquals(2, system.getRentalRecordsByCustomer(system.findCustomerById(1)).size());
+        }
+    }
+
+    private static Path lastSegment(Path dir) throws Exception {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "segment-*")) {
+            for (Path p : stream) segments.add(p);
+        }
+        Collections.sort(segments);
+        return segments.get(segments.size() - 1);
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Several branches, each a RentalSystem of its own: separate fleet, indexes,
+// history, journal, locks and data files under <dataDir>/branches/<branch>.
+// Calls that name a vehicle are routed to its branch and only lock there;
+// fleet-wide and history queries run on every branch in parallel and merge.
+//
+// Vehicles are placed in the branch they are added to, or by plate hash when
+// no branch is given; a plate directory, rebuilt from the branches on
+// startup, routes later calls. Plates are unique across branches.
+// Customers live in a home branch chosen by ID hash, which keeps IDs unique
+// and answers lookups; only customers registered there can rent, return or
+// reserve. A customer who does so elsewhere is copied into that branch's
+// customers file too, so the branch reloads its records on its own.
+// Reservation IDs are per branch, so reservations are cancelled and picked
+// up through the Reservation rather than its ID.
+public class ShardedRentalSystem implements Closeable {
+    private final List<String> names;
+    private final List<RentalSystem> branches;
+    private final ConcurrentIntObjectMap<RentalSystem> branchByPlate = new ConcurrentIntObjectMap<>();
+
+    // Opens every branch in config.getBranches(), in parallel.
+    public ShardedRentalSystem(RentalConfig config) {
+        if (config.getBranches().isEmpty()) throw new IllegalArgumentException("No branches configured");
+        this.names = config.getBranches();
+        this.branches = names.parallelStream().map(name -> {
+            RentalConfig branchConfig = config.forBranch(name);
+            try {
+                Files.createDirectories(branchConfig.getDataDir());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create data directory for branch " + name, e);
+            }
+            return new RentalSystem(branchConfig);
+        }).collect(Collectors.toList());
+
+        for (RentalSystem branch : branches) {
+            for (Vehicle v : branch.searchVehicles(new VehicleQuery())) {
+                if (branchByPlate.putIfAbsent(v.getPackedPlate(), branch) != null)
+                    System.out.println("Warning: " + v.getLicensePlate() + " is in more than one branch.");
+            }
+        }
+    }
+
+    public List<String> getBranchNames() {
+        return names;
+    }
+
+    // The branch itself, for per-branch operations such as getStats(); null if unknown.
+    public RentalSystem getBranch(String name) {
+        int i = names.indexOf(name);
+        return i < 0 ? null : branches.get(i);
+    }
+
+    // Name of the branch holding the vehicle, or null.
+    public String branchOf(Vehicle vehicle) {
+        RentalSystem branch = branchByPlate.get(vehicle.getPackedPlate());
+        return branch == null ? null : names.get(branches.indexOf(branch));
+    }
+
+    // FLEET AND CUSTOMERS
+
+    public boolean addVehicle(Vehicle vehicle) {
+        if (vehicle.getPackedPlate() < 0) {
+            System.out.println("Error: Vehicle has no valid license plate.");
+            return false;
+        }
+        return addVehicle(names.get(index(vehicle.getPackedPlate())), vehicle);
+    }
+
+    public boolean addVehicle(String branchName, Vehicle vehicle) {
+        RentalSystem branch = getBranch(branchName);
+        if (branch == null) {
+            System.out.println("Error: No branch named " + branchName + ".");
+            return false;
+        }
+        if (vehicle.getPackedPlate() < 0) {
+            System.out.println("Error: Vehicle has no valid license plate.");
+            return false;
+        }
+        // claim the plate first so two branches cannot both take it
+        if (branchByPlate.putIfAbsent(vehicle.getPackedPlate(), branch) != null) {
+            System.out.println("Error: A vehicle with this license plate already exists.");
+            return false;
+        }
+        if (!branch.addVehicle(vehicle)) {
+            branchByPlate.remove(vehicle.getPackedPlate());
+            return false;
+        }
+        return true;
+    }
+
+    public boolean addCustomer(Customer customer) {
+        return home(customer.getCustomerId()).addCustomer(customer);
+    }
+
+    public Vehicle findVehicleByPlate(String plate) {
+        int packed = Vehicle.packPlate(plate);
+        RentalSystem branch = packed < 0 ? null : branchByPlate.get(packed);
+        return branch == null ? null : branch.findVehicleByPlate(plate);
+    }
+
+    public Customer findCustomerById(int id) {
+        return home(id).findCustomerById(id);
+    }
+
+    // Customers whose name contains the text (or, failing that, is close to
+    // it), from every branch. Each customer is reported once, by their home
+    // branch, or by the first branch holding them if the home branch lacks them.
+    public List<Customer> findCustomersByName(String name) {
+        List<Customer> found = fanOut(branch -> {
+            List<Customer> matches = branch.findCustomersByName(name);
+            matches.removeIf(c -> home(c.getCustomerId()) != branch
+                    && home(c.getCustomerId()).findCustomerById(c.getCustomerId()) != null);
+            return matches;
+        });
+        Set<Integer> seen = new HashSet<>();
+        found.removeIf(c -> !seen.add(c.getCustomerId()));
+        return found;
+    }
+
+    // RENT & RETURN
+
+    public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        RentalSystem branch = route(vehicle);
+        Customer known = adopt(branch, customer);
+        return known != null && branch.rentVehicle(vehicle, known, date, amount);
+    }
+
+    public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        RentalSystem branch = route(vehicle);
+        Customer known = adopt(branch, customer);
+        return known != null && branch.returnVehicle(vehicle, known, date, extraFees);
+    }
+
+    // RESERVATIONS
+
+    public Reservation reserveVehicle(Vehicle vehicle, Customer customer, LocalDate start, LocalDate end) {
+        RentalSystem branch = route(vehicle);
+        Customer known = adopt(branch, customer);
+        return known == null ? null : branch.reserveVehicle(vehicle, known, start, end);
+    }
+
+    public boolean cancelReservation(Reservation reservation) {
+        RentalSystem branch = route(reservation.getVehicle());
+        return branch != null && branch.cancelReservation(reservation.getId());
+    }
+
+    public boolean pickUpReservation(Reservation reservation, LocalDate date, double amount) {
+        RentalSystem branch = route(reservation.getVehicle());
+        return branch != null && branch.pickUpReservation(reservation.getId(), date, amount);
+    }
+
+    public List<Reservation> getReservations(Vehicle vehicle) {
+        RentalSystem branch = route(vehicle);
+        return branch == null ? Collections.<Reservation>emptyList() : branch.getReservations(vehicle);
+    }
+
+    // FLEET-WIDE QUERIES
+    // Results are concatenated in branch order.
+
+    public List<Vehicle> getVehiclesByStatus(Vehicle.VehicleStatus status) {
+        return fanOut(branch -> branch.getVehiclesByStatus(status));
+    }
+
+    public List<Vehicle> searchVehicles(VehicleQuery query) {
+        return fanOut(branch -> branch.searchVehicles(query));
+    }
+
+    public List<Vehicle> findFreeVehicles(String type, LocalDate start, LocalDate end) {
+        return fanOut(branch -> branch.findFreeVehicles(type, start, end));
+    }
+
+    public int countVehicles(Vehicle.VehicleStatus status) {
+        return branches.parallelStream().mapToInt(branch -> branch.countVehicles(status)).sum();
+    }
+
+    public Map<String, Integer> countVehiclesByType(Vehicle.VehicleStatus status) {
+        Map<String, Integer> total = new TreeMap<>();
+        for (Map<String, Integer> counts : branches.parallelStream()
+                .map(branch -> branch.countVehiclesByType(status)).collect(Collectors.toList()))
+            counts.forEach((type, n) -> total.merge(type, n, Integer::sum));
+        return total;
+    }
+
+    // Available vehicles per branch, in branch order.
+    public Map<String, Integer> countAvailableByBranch() {
+        List<Integer> counts = branches.parallelStream()
+                .map(branch -> branch.countVehicles(Vehicle.VehicleStatus.Available))
+                .collect(Collectors.toList());
+        Map<String, Integer> byBranch = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) byBranch.put(names.get(i), counts.get(i));
+        return byBranch;
+    }
+
+    // HISTORY
+    // Each branch's matches are in its log order, which is nearly date order,
+    // so the stable sort of the concatenation is close to a k-way merge.
+
+    public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to, RecordType type) {
+        return byDate(fanOut(branch -> branch.getRentalRecordsBetween(from, to, type)));
+    }
+
+    public List<RentalRecord> getRentalRecordsByCustomer(Customer customer) {
+        return byDate(fanOut(branch -> branch.getRentalRecordsByCustomer(customer)));
+    }
+
+    // MAINTENANCE
+
+    public void snapshot() throws IOException {
+        forEachBranch(RentalSystem::snapshot);
+    }
+
+    public void compact() throws IOException {
+        forEachBranch(RentalSystem::compact);
+    }
+
+    // Closes every branch (see RentalSystem.close()).
+    @Override
+    public void close() {
+        branches.parallelStream().forEach(RentalSystem::close);
+    }
+
+    private interface BranchTask {
+        void run(RentalSystem branch) throws IOException;
+    }
+
+    // Runs the task on every branch in parallel; the first failure is rethrown.
+    private void forEachBranch(BranchTask task) throws IOException {
+        try {
+            branches.parallelStream().forEach(branch -> {
+                try {
+                    task.run(branch);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ROUTING
+
+    private RentalSystem route(Vehicle vehicle) {
+        RentalSystem branch = branchByPlate.get(vehicle.getPackedPlate());
+        if (branch == null)
+            System.out.println("Error: Vehicle " + vehicle.getLicensePlate() + " is not in any branch.");
+        return branch;
+    }
+
+    // The customer as registered in their home branch, made known to the
+    // vehicle's branch too; null if either is unknown. Only registered
+    // customers are copied, so no branch ever holds an ID its home lacks.
+    private Customer adopt(RentalSystem branch, Customer customer) {
+        if (branch == null) return null;
+        Customer known = findCustomerById(customer.getCustomerId());
+        if (known == null) {
+            System.out.println("Error: Customer " + customer.getCustomerId() + " is not registered.");
+            return null;
+        }
+        return branch.adoptCustomer(known) ? known : null;
+    }
+
+    private RentalSystem home(int customerId) {
+        return branches.get(index(customerId));
+    }
+
+    // Mixes the key (murmur3's finalizer) so sequential plates and IDs spread
+    // evenly over the branches.
+    private int index(int key) {
+        int h = key ^ (key >>> 16);
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, branches.size());
+    }
+
+    private <T> List<T> fanOut(Function<RentalSystem, List<T>> query) {
+        List<List<T>> parts = branches.parallelStream().map(query).collect(Collectors.toList());
+        List<T> merged = new ArrayList<>(parts.stream().mapToInt(List::size).sum());
+        for (List<T> part : parts) merged.addAll(part);
+        return merged;
+    }
+
+    private static List<RentalRecord> byDate(List<RentalRecord> records) {
+        records.sort(Comparator.comparing(RentalRecord::getRecordDate));
+        return records;
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+public class ShardedRentalSystemTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void testCustomersAreRegisteredInTheirHomeBranch() throws Exception {
+
+        RentalConfig config = config(dataDir);
+        ShardedRentalSystem system = new ShardedRentalSystem(config);
+
+        // one car per branch, so one of them is outside customer 5's home branch
+        Vehicle[] cars = new Vehicle[2];
+        for (int i = 0; i < cars.length; i++) {
+            cars[i] = new Car("Test", "Car", 2020, 4);
+            cars[i].setLicensePlate(String.format("SHD%03d", i));
+            assertTrue(system.addVehicle(config.getBranches().get(i), cars[i]));
+            assertEquals(config.getBranches().get(i), system.branchOf(cars[i]));
+        }
+        assertFalse(system.addVehicle("B", cars[0]), "plates are unique across branches");
+
+        Customer stranger = new Customer(5, "Sharded Stranger");
+        for (Vehicle car : cars) {
+            assertFalse(system.rentVehicle(car, stranger, LocalDate.now(), 10));
+            assertEquals(Vehicle.VehicleStatus.Available, car.getStatus());
+        }
+
+        assertTrue(system.addCustomer(new Customer(5, "Sharded Customer")));
+        assertFalse(system.addCustomer(new Customer(5, "Sharded Duplicate")));
+        for (Vehicle car : cars) {
+            assertTrue(system.rentVehicle(car, stranger, LocalDate.now(), 10));
+            assertEquals(Vehicle.VehicleStatus.Rented, car.getStatus());
+        }
+
+        // the customer is now in both branches but is found once, under their registered name
+        assertEquals(1, system.findCustomersByName("Sharded").size());
+        assertEquals("Sharded Customer", system.findCustomersByName("Sharded").get(0).getCustomerName());
+        assertEquals(2, system.getRentalRecordsByCustomer(system.findCustomerById(5)).size());
+        assertEquals(2, system.countVehicles(Vehicle.VehicleStatus.Rented));
+        system.close();
+
+        // each branch reloads its own vehicles and records
+        try (ShardedRentalSystem reopened = new ShardedRentalSystem(config)) {
+            for (int i = 0; i < cars.length; i++) {
+                Vehicle car = reopened.findVehicleByPlate(cars[i].getLicensePlate());
+                assertNotNull(car);
+                assertEquals(Vehicle.VehicleStatus.Rented, car.getStatus());
+                assertEquals(config.getBranches().get(i), reopened.branchOf(car));
+            }
+            assertEquals(2, reopened.getRentalRecordsByCustomer(reopened.findCustomerById(5)).size());
+        }
+    }
+
+    @Test
+    public void testBranchNamesStayInsideTheDataDirectory() {
+
+        RentalConfig config = new RentalConfig();
+        assertThrows(IllegalArgumentException.class, () -> config.setBranches("A", ".."));
+        assertThrows(IllegalArgumentException.class, () -> config.setBranches("A", "A"));
+        assertThrows(IllegalArgumentException.class, () -> config.forBranch("../elsewhere"));
+    }
+
+    private static RentalConfig config(Path dataDir) {
+        RentalConfig config = new RentalConfig();
+        config.setDataDir(dataDir);
+        config.setMetrics(false);
+        config.setBranches("A", "B");
+        return config;
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Point-in-time copy of the fleet, customers, vehicle statuses and dashboard
+// counters, plus how much of each data file the copy already covers: byte
+// offsets into vehicles.txt and customers.txt, and a SegmentedRecordLog
+// position.
+//
+// File layout (text, one entry per line):
+//   #SNAPSHOT3,<vehiclesOffset>,<customersOffset>,<recordsPosition>,<recordFormat>
+//   V,<status>,<vehicles.txt line>
+//   C,<customers.txt line>
+//   S,<counter name>,<value>
+public class Snapshot {
+    private final long vehiclesOffset;
+    private final long customersOffset;
+    private final long recordsPosition;
+    private final RecordFormat recordFormat;
+    private final List<String> vehicleLines;
+    private final List<Vehicle.VehicleStatus> statuses;
+    private final List<String> customerLines;
+    private final Map<String, Long> stats;
+
+    private static final String HEADER = "#SNAPSHOT3,";
+
+    public Snapshot(long vehiclesOffset, long customersOffset, long recordsPosition, RecordFormat recordFormat) {
+        this.vehiclesOffset = vehiclesOffset;
+        this.customersOffset = customersOffset;
+        this.recordsPosition = recordsPosition;
+        this.recordFormat = recordFormat;
+        this.vehicleLines = new ArrayList<>();
+        this.statuses = new ArrayList<>();
+        this.customerLines = new ArrayList<>();
+        this.stats = new LinkedHashMap<>();
+    }
+
+    public void addVehicle(String line, Vehicle.VehicleStatus status) {
+        vehicleLines.add(line);
+        statuses.add(status);
+    }
+
+    public void addCustomer(String line) {
+        customerLines.add(line);
+    }
+
+    public void addStat(String name, long value) {
+        stats.put(name, value);
+    }
+
+    public long getVehiclesOffset() { return vehiclesOffset; }
+    public long getCustomersOffset() { return customersOffset; }
+    public long getRecordsPosition() { return recordsPosition; }
+    public RecordFormat getRecordFormat() { return recordFormat; }
+    public List<String> getVehicleLines() { return vehicleLines; }
+    public List<Vehicle.VehicleStatus> getStatuses() { return statuses; }
+    public List<String> getCustomerLines() { return customerLines; }
+    public Map<String, Long> getStats() { return stats; }
+
+    // Same state, but pointing at a position in a different record log.
+    public Snapshot withRecords(RecordFormat format, long position) {
+        Snapshot copy = new Snapshot(vehiclesOffset, customersOffset, position, format);
+        copy.vehicleLines.addAll(vehicleLines);
+        copy.statuses.addAll(statuses);
+        copy.customerLines.addAll(customerLines);
+        copy.stats.putAll(stats);
+        return copy;
+    }
+
+    // Writes to a temporary file, forces it, then renames it over the old snapshot,
+    // so a crash leaves either the previous snapshot or the new one.
+    public void write(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), 64 * 1024);
+            out.write(HEADER + vehiclesOffset + "," + customersOffset + "," + recordsPosition + ","
+                    + recordFormat + "\n");
+            for (int i = 0; i < vehicleLines.size(); i++)
+                out.write("V," + statuses.get(i) + "," + vehicleLines.get(i) + "\n");
+            for (String line : customerLines)
+                out.write("C," + line + "\n");
+            for (Map.Entry<String, Long> stat : stats.entrySet())
+                out.write("S," + stat.getKey() + "," + stat.getValue() + "\n");
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns null if there is no snapshot; throws if one exists but is unreadable.
+    public static Snapshot read(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header == null || !header.startsWith(HEADER))
+                throw new IOException("Missing or outdated snapshot header in " + path);
+
+            String[] h = header.split(",");
+            if (h.length < 4) throw new IOException("Malformed snapshot header in " + path);
+            RecordFormat format = h.length > 4 ? RecordFormat.valueOf(h[4]) : RecordFormat.CSV;
+            Snapshot snapshot = new Snapshot(Long.parseLong(h[1]), Long.parseLong(h[2]), Long.parseLong(h[3]), format);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("V,")) {
+                    int comma = line.indexOf(',', 2);
+                    if (comma < 0) throw new IOException("Malformed vehicle entry in " + path + ": " + line);
+                    snapshot.addVehicle(line.substring(comma + 1),
+                            Vehicle.VehicleStatus.valueOf(line.substring(2, comma)));
+                } else if (line.startsWith("C,")) {
+                    snapshot.addCustomer(line.substring(2));
+                } else if (line.startsWith("S,")) {
+                    int comma = line.lastIndexOf(',');
+                    if (comma < 2) throw new IOException("Malformed counter entry in " + path + ": " + line);
+                    snapshot.addStat(line.substring(2, comma), Long.parseLong(line.substring(comma + 1)));
+                }
+            }
+            return snapshot;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt snapshot " + path + ": " + e.getMessage(), e);
+        }
+    }
+}
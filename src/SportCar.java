@@ -1,15 +1,18 @@
 public final class SportCar extends Car {
-    private int horsepower;
-    private boolean hasTurbo;
 
     public SportCar(String make, String model, int year, int numSeats, int horsepower, boolean hasTurbo) {
         super(make, model, year, numSeats);
-        this.horsepower = horsepower;
-        this.hasTurbo = hasTurbo;
+        setHorsepower(horsepower);
+        setFlag(TURBO, hasTurbo);
+    }
+
+    @Override
+    public String getTypeName() {
+        return "SportCar";
     }
 
     @Override
     public String getInfo() {
-        return super.getInfo() + " | Horsepower: " + horsepower + " | Turbo: " + (hasTurbo ? "Yes" : "No");
+        return super.getInfo() + " | Horsepower: " + getHorsepower() + " | Turbo: " + (getFlag(TURBO) ? "Yes" : "No");
     }
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Canonical values of a low-cardinality text attribute and their int codes.
+//
+// Values are capitalized the way vehicles always have been ("toyota" becomes
+// "Toyota"), so encoding ignores case. Each distinct value is stored once and
+// codes are never reused: two equal codes mean two equal values, and code
+// comparisons replace string comparisons. Encoding a value that is already
+// in the dictionary, from a String or from ASCII bytes, does not allocate.
+public final class StringDictionary {
+    public static final StringDictionary MAKES = new StringDictionary();
+    public static final StringDictionary MODELS = new StringDictionary();
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // code -> value; replaced, never modified in place past size, so decode needs no lock
+    private volatile String[] values = new String[16];
+    // code + 1 per bucket, 0 when empty
+    private int[] table = new int[32];
+    private int size;
+
+    // The code of the value, adding it if it is new; -1 for null.
+    public synchronized int encode(String value) {
+        if (value == null) return -1;
+        if (!isAscii(value)) value = capitalize(value);
+
+        int bucket = find(value);
+        if (table[bucket] != 0) return table[bucket] - 1;
+        return add(bucket, isAscii(value) ? fold(value) : value);
+    }
+
+    // The code of the UTF-8 text in bytes[start, end), adding it if it is new.
+    public synchronized int encode(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (bytes[i] < 0) return encode(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+
+        int mask = table.length - 1;
+        int bucket = hash(bytes, start, end) & mask;
+        for (; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (matches(values[table[bucket] - 1], bytes, start, end)) return table[bucket] - 1;
+        }
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) chars[i] = fold((char) bytes[start + i], i);
+        return add(bucket, new String(chars));
+    }
+
+    // The code of the value if it is in the dictionary, else -1. Never adds.
+    public synchronized int find(CharSequence value) {
+        if (value == null) return -1;
+        String key = value.toString();
+        if (!isAscii(key)) key = capitalize(key);
+        int bucket = find(key);
+        return table[bucket] - 1;
+    }
+
+    // The canonical value for the code; null for -1.
+    public String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Caller holds the lock. The bucket holding the value, or the empty bucket where it would go.
+    private int find(String key) {
+        int mask = table.length - 1;
+        int bucket = hash(key) & mask;
+        for (; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (matches(values[table[bucket] - 1], key)) return bucket;
+        }
+        return bucket;
+    }
+
+    // Caller holds the lock.
+    private int add(int bucket, String value) {
+        int code = size++;
+        String[] current = values;
+        if (code == current.length) {
+            current = Arrays.copyOf(current, code * 2);
+            current[code] = value;
+            values = current;
+        } else {
+            current[code] = value;
+        }
+        table[bucket] = code + 1;
+        if (size > table.length * LOAD_FACTOR) rehash();
+        return code;
+    }
+
+    private void rehash() {
+        int[] grown = new int[table.length * 2];
+        int mask = grown.length - 1;
+        for (int entry : table) {
+            if (entry == 0) continue;
+            int bucket = hash(values[entry - 1]) & mask;
+            while (grown[bucket] != 0) bucket = (bucket + 1) & mask;
+            grown[bucket] = entry;
+        }
+        table = grown;
+    }
+
+    // Hashes and comparisons see every string through fold, so they run on the
+    // input as given; stored values are already folded.
+
+    private static int hash(CharSequence text) {
+        int h = 0;
+        for (int i = 0; i < text.length(); i++) h = 31 * h + fold(text.charAt(i), i);
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + fold((char) bytes[i], i - start);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String stored, CharSequence text) {
+        if (stored.length() != text.length()) return false;
+        for (int i = 0; i < stored.length(); i++)
+            if (stored.charAt(i) != fold(text.charAt(i), i)) return false;
+        return true;
+    }
+
+    private static boolean matches(String stored, byte[] bytes, int start, int end) {
+        if (stored.length() != end - start) return false;
+        for (int i = 0; i < stored.length(); i++)
+            if (stored.charAt(i) != fold((char) bytes[start + i], i)) return false;
+        return true;
+    }
+
+    // Upper-cases the first ASCII letter and lower-cases the rest; other characters pass through.
+    private static char fold(char c, int index) {
+        if (index == 0) return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    private static String fold(String text) {
+        char[] chars = new char[text.length()];
+        for (int i = 0; i < chars.length; i++) chars[i] = fold(text.charAt(i), i);
+        return new String(chars);
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) >= 0x80) return false;
+        return true;
+    }
+
+    private static String capitalize(String input) {
+        if (input.isEmpty()) return input;
+        return input.substring(0, 1).toUpperCase(Locale.ROOT) + input.substring(1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Trigram index over names, keyed by an int id (the customer id).
+//
+// Names are lower-cased and padded with a space on each side, so " ann " is
+// indexed as " an", "ann", "nn ". Every substring of a name therefore lies
+// inside one of its trigrams, and names that differ by a typo still share
+// most of them. Trigrams are packed into an int (10 bits per char); chars
+// outside that range may collide, which only adds candidates that the
+// substring check or the similarity score then filters out.
+//
+// One and two character queries have no trigram of their own, so the
+// single characters and pairs of each (unpadded) name get posting lists too.
+public class TrigramIndex {
+    private final IntObjectMap<Postings> byTrigram = new IntObjectMap<>();
+    private final IntObjectMap<Postings> byShortGram = new IntObjectMap<>();
+    private final IntObjectMap<Entry> entries = new IntObjectMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Adds a name; an id that is already indexed is left unchanged.
+    public boolean add(int id, String name) {
+        Entry entry = new Entry(id, normalize(name));
+        lock.writeLock().lock();
+        try {
+            if (entries.putIfAbsent(id, entry) != null) return false;
+            addPostings(byTrigram, entry.trigrams, id);
+            addPostings(byShortGram, entry.shortGrams, id);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(id);
+            if (entry == null) return;
+            removePostings(byTrigram, entry.trigrams, id);
+            removePostings(byShortGram, entry.shortGrams, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ids whose name contains the text (case-insensitive), in the order they were added.
+    public int[] find(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        if (needle.isEmpty()) return new int[0];
+
+        lock.readLock().lock();
+        try {
+            Postings candidates = needle.length() >= 3 ? rarest(needle) : byShortGram.get(shortGram(needle));
+            if (candidates == null) return new int[0];
+
+            int[] result = new int[candidates.size];
+            int n = 0;
+            for (int i = 0; i < candidates.size; i++) {
+                Entry entry = entries.get(candidates.ids[i]);
+                if (entry.name.contains(needle)) result[n++] = entry.id;
+            }
+            return Arrays.copyOf(result, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ids whose name shares enough trigrams with the text to be a likely typo
+    // of it, best match first. Similarity is the fraction of the text's
+    // trigrams found in the name, so a misspelt first name still scores well
+    // against a full name.
+    public int[] findSimilar(String text, double minSimilarity) {
+        int[] query = trigrams(normalize(text));
+        if (query.length == 0) return new int[0];
+
+        lock.readLock().lock();
+        try {
+            // only names sharing at least one trigram are ever looked at
+            IntObjectMap<int[]> shared = new IntObjectMap<>();
+            int[] seen = new int[16];
+            int candidates = 0;
+            for (int trigram : query) {
+                Postings ids = byTrigram.get(trigram);
+                if (ids == null) continue;
+                for (int i = 0; i < ids.size; i++) {
+                    int[] count = shared.get(ids.ids[i]);
+                    if (count == null) {
+                        shared.put(ids.ids[i], count = new int[1]);
+                        if (candidates == seen.length) seen = Arrays.copyOf(seen, candidates << 1);
+                        seen[candidates++] = ids.ids[i];
+                    }
+                    count[0]++;
+                }
+            }
+
+            long[] scored = new long[candidates];
+            int n = 0;
+            for (int i = 0; i < candidates; i++) {
+                double similarity = (double) shared.get(seen[i])[0] / query.length;
+                if (similarity < minSimilarity) continue;
+                // score in the high bits, position in the low bits: sorting ranks by score, ties by insertion
+                scored[n++] = (long) (1_000_000 - (int) (similarity * 1_000_000)) << 32 | i;
+            }
+            Arrays.sort(scored, 0, n);
+
+            int[] result = new int[n];
+            for (int i = 0; i < n; i++) result[i] = seen[(int) scored[i]];
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read lock. The posting list of the query's least common
+    // trigram; every match is in it.
+    private Postings rarest(String needle) {
+        Postings best = null;
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            Postings ids = byTrigram.get(pack(needle.charAt(i), needle.charAt(i + 1), needle.charAt(i + 2)));
+            if (ids == null) return null;
+            if (best == null || ids.size < best.size) best = ids;
+        }
+        return best;
+    }
+
+    // Caller holds the write lock.
+    private static void addPostings(IntObjectMap<Postings> index, int[] grams, int id) {
+        for (int gram : grams) {
+            Postings ids = index.get(gram);
+            if (ids == null) index.put(gram, ids = new Postings());
+            ids.add(id);
+        }
+    }
+
+    // Caller holds the write lock.
+    private static void removePostings(IntObjectMap<Postings> index, int[] grams, int id) {
+        for (int gram : grams) {
+            Postings ids = index.get(gram);
+            ids.remove(id);
+            if (ids.size == 0) index.remove(gram);
+        }
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Distinct trigrams of the padded name.
+    private static int[] trigrams(String name) {
+        if (name.isEmpty()) return new int[0];
+        String padded = " " + name + " ";
+        int[] result = new int[padded.length() - 2];
+        for (int i = 0; i < result.length; i++)
+            result[i] = pack(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2));
+        return distinct(result);
+    }
+
+    private static int[] distinct(int[] grams) {
+        Arrays.sort(grams);
+        int n = 0;
+        for (int i = 0; i < grams.length; i++)
+            if (n == 0 || grams[n - 1] != grams[i]) grams[n++] = grams[i];
+        return Arrays.copyOf(grams, n);
+    }
+
+    // Distinct single characters and pairs of the name.
+    private static int[] shortGrams(String name) {
+        int[] result = new int[Math.max(0, 2 * name.length() - 1)];
+        for (int i = 0; i < name.length(); i++) {
+            result[2 * i] = shortGram(name.substring(i, i + 1));
+            if (i + 1 < name.length()) result[2 * i + 1] = shortGram(name.substring(i, i + 2));
+        }
+        return distinct(result);
+    }
+
+    private static int pack(char a, char b, char c) {
+        return (a & 0x3FF) << 20 | (b & 0x3FF) << 10 | (c & 0x3FF);
+    }
+
+    // A one or two character gram; the high bit keeps pairs apart from single characters.
+    private static int shortGram(String gram) {
+        int a = gram.charAt(0) & 0x3FF;
+        return gram.length() == 1 ? a : 1 << 20 | a << 10 | (gram.charAt(1) & 0x3FF);
+    }
+
+    private static class Entry {
+        final int id;
+        final String name;
+        final int[] trigrams;
+        final int[] shortGrams;
+
+        Entry(int id, String name) {
+            this.id = id;
+            this.name = name;
+            this.trigrams = trigrams(name);
+            this.shortGrams = shortGrams(name);
+        }
+    }
+
+    // Ids containing one gram, in the order they were added.
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size << 1);
+            ids[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,50 +1,218 @@
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 public abstract class Vehicle {
-    private String licensePlate;
-    private String make;
-    private String model;
-    private int year;
-    private VehicleStatus status;
+    private int packedPlate = -1;
+    private volatile StatusListener statusListener;
+
+    // The attributes, the subclasses' included, live in one place: the heap
+    // Attributes below or, once the vehicle is attached to a FleetStore, a
+    // slot of the store, the vehicle keeping only the slot number. A vehicle
+    // is attached before it is published and never detached afterwards, so
+    // these fields do not change while other threads can read them.
+    private Attributes attributes = new Attributes();
+    private FleetStore store;
+    private int slot = -1;
+
+    // Flag bits of the subclasses (see getFlag).
+    static final int ACCESSIBLE = 1; // Minibus
+    static final int TRAILER = 2;    // PickupTruck
+    static final int TURBO = 4;      // SportCar
 
     public enum VehicleStatus { Available, Held, Rented, UnderMaintenance, OutOfService }
 
+    // Told after every status change; the new status is read from the vehicle.
+    // Flag changes (Minibus.setAccessible) are told the same way.
+    public interface StatusListener {
+        void statusChanged(Vehicle vehicle);
+
+        default void flagsChanged(Vehicle vehicle) {
+        }
+    }
+
     public Vehicle(String make, String model, int year) {
-        this.make = capitalize(make);
-        this.model = capitalize(model);
-        this.year = year;
-        this.status = VehicleStatus.Available;
-        this.licensePlate = null;
+        attributes.makeCode = StringDictionary.MAKES.encode(make);
+        attributes.modelCode = StringDictionary.MODELS.encode(model);
+        attributes.year = year;
     }
 
     private boolean isValidPlate(String plate) {
-        if (plate == null || plate.isEmpty()) return false;
+        if (plate == null || plate.length() != 6) return false;
 
-        //match 3 letters + 3 digits
-        return plate.matches("^[A-Z]{3}[0-9]{3}$");
+        //match 3 upper-case letters + 3 digits
+        for (int i = 0; i < 3; i++)
+            if (plate.charAt(i) < 'A' || plate.charAt(i) > 'Z') return false;
+        for (int i = 3; i < 6; i++)
+            if (plate.charAt(i) < '0' || plate.charAt(i) > '9') return false;
+        return true;
     }
 
     public void setLicensePlate(String plate) {
+        if (store != null) throw new IllegalStateException("Cannot change the plate of a stored vehicle");
         if (!isValidPlate(plate)) {
             throw new IllegalArgumentException("Invalid license plate format. Must be 3 letters followed by 3 digits.");
         }
-        this.licensePlate = plate.toUpperCase();
+        attributes.licensePlate = plate;
+        this.packedPlate = packPlate(plate);
+    }
+
+    // Sets the plate from its packed form (see packPlate), as read by the loaders.
+    void setPackedPlate(int packed) {
+        if (store != null) throw new IllegalStateException("Cannot change the plate of a stored vehicle");
+        if (packed < 0) {
+            throw new IllegalArgumentException("Invalid license plate format. Must be 3 letters followed by 3 digits.");
+        }
+        attributes.licensePlate = unpackPlate(packed);
+        this.packedPlate = packed;
+    }
+
+    // Packs a 3-letter + 3-digit plate into an int (letters case-insensitive).
+    // Returns -1 if the plate does not have that shape.
+    public static int packPlate(CharSequence plate) {
+        if (plate == null || plate.length() != 6) return -1;
+
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            int c = plate.charAt(i) | 0x20; // fold to lower case
+            if (c < 'a' || c > 'z') return -1;
+            packed = packed * 26 + (c - 'a');
+        }
+        for (int i = 3; i < 6; i++) {
+            int d = plate.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            packed = packed * 10 + d;
+        }
+        return packed;
     }
 
-    private String capitalize(String input) {
-        if (input == null || input.isEmpty()) return input;
-        return input.substring(0,1).toUpperCase() + input.substring(1).toLowerCase();
+    public static String unpackPlate(int packed) {
+        char[] chars = new char[6];
+        for (int i = 5; i >= 3; i--) {
+            chars[i] = (char) ('0' + packed % 10);
+            packed /= 10;
+        }
+        for (int i = 2; i >= 0; i--) {
+            chars[i] = (char) ('A' + packed % 26);
+            packed /= 26;
+        }
+        return new String(chars);
     }
 
     public void setStatus(VehicleStatus status) {
-        this.status = status;
+        VehicleStatus old = store != null ? store.getAndSetStatus(slot, status) : STATUS.getAndSet(attributes, status);
+        if (old != status) notifyStatusChanged();
+    }
+
+    // Atomically moves the vehicle from one status to another.
+    // Returns false if the vehicle was not in the expected status.
+    public boolean compareAndSetStatus(VehicleStatus expected, VehicleStatus update) {
+        if (!compareAndSetStatusQuietly(expected, update)) return false;
+        if (expected != update) notifyStatusChanged();
+        return true;
+    }
+
+    // Like compareAndSetStatus, but the listener is not told: the caller calls
+    // fireStatusChanged() once it has left any lock held around the change.
+    boolean compareAndSetStatusQuietly(VehicleStatus expected, VehicleStatus update) {
+        return store != null ? store.compareAndSetStatus(slot, expected, update)
+                : STATUS.compareAndSet(attributes, expected, update);
+    }
+
+    void fireStatusChanged() {
+        notifyStatusChanged();
     }
 
-    public String getLicensePlate() { return licensePlate; }
-    public String getMake() { return make; }
-    public String getModel() { return model; }
-    public int getYear() { return year; }
-    public VehicleStatus getStatus() { return status; }
+    public void setStatusListener(StatusListener listener) {
+        this.statusListener = listener;
+    }
+
+    private void notifyStatusChanged() {
+        StatusListener listener = statusListener;
+        if (listener != null) listener.statusChanged(this);
+    }
+
+    public String getLicensePlate() { return store != null ? unpackPlate(packedPlate) : attributes.licensePlate; }
+    public int getPackedPlate() { return packedPlate; }
+    public String getMake() { return StringDictionary.MAKES.decode(getMakeCode()); }
+    public String getModel() { return StringDictionary.MODELS.decode(getModelCode()); }
+    public int getMakeCode() { return store != null ? store.getInt(slot, FleetStore.MAKE) : attributes.makeCode; }
+    public int getModelCode() { return store != null ? store.getInt(slot, FleetStore.MODEL) : attributes.modelCode; }
+    public int getYear() { return store != null ? store.getInt(slot, FleetStore.YEAR) : attributes.year; }
+    public VehicleStatus getStatus() { return store != null ? store.status(slot) : attributes.status; }
+
+    // Attributes of the subclasses, which keep no fields of their own.
+
+    int getSeats() { return store != null ? store.getInt(slot, FleetStore.SEATS) : attributes.seats; }
+    int getHorsepower() { return store != null ? store.getInt(slot, FleetStore.HORSEPOWER) : attributes.horsepower; }
+    double getSize() { return store != null ? store.getDouble(slot, FleetStore.SIZE) : attributes.size; }
+    boolean getFlag(int flag) { return ((store != null ? store.flags(slot) : attributes.flags) & flag) != 0; }
+
+    void setSeats(int seats) {
+        if (store != null) throw new IllegalStateException("Cannot change the seats of a stored vehicle");
+        attributes.seats = seats;
+    }
+
+    void setHorsepower(int horsepower) {
+        if (store != null) throw new IllegalStateException("Cannot change the horsepower of a stored vehicle");
+        attributes.horsepower = horsepower;
+    }
+
+    void setSize(double size) {
+        if (store != null) throw new IllegalStateException("Cannot change the size of a stored vehicle");
+        attributes.size = size;
+    }
+
+    // Flags may change after the vehicle is published, so they are set like the status.
+    void setFlag(int flag, boolean on) {
+        if (store != null) {
+            store.setFlag(slot, flag, on);
+        } else {
+            synchronized (attributes) {
+                attributes.flags = on ? attributes.flags | flag : attributes.flags & ~flag;
+            }
+        }
+        StatusListener listener = statusListener;
+        if (listener != null) listener.flagsChanged(this);
+    }
+
+    boolean isStored() { return store != null; }
+    FleetStore getStore() { return store; }
+    int getSlot() { return slot; }
+    Attributes getAttributes() { return attributes; }
+
+    // Called by FleetStore once the slot holds this vehicle's attributes.
+    void attached(FleetStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+        this.attributes = null;
+    }
+
+    // Called by FleetStore, for a vehicle that was never published, before it frees the slot.
+    void detached(Attributes attributes) {
+        this.attributes = attributes;
+        this.store = null;
+        this.slot = -1;
+    }
+
+    // The type shown in listings and counted in per-type totals.
+    public abstract String getTypeName();
 
     public String getInfo() {
-        return "| " + licensePlate + " | " + make + " | " + model + " | " + year + " | " + status + " |";
+        return "| " + getLicensePlate() + " | " + getMake() + " | " + getModel() + " | " + getYear() + " | " + getStatus() + " |";
     }
+
+    // A vehicle's attributes while it is kept on the heap.
+    static final class Attributes {
+        String licensePlate;
+        int makeCode;  // StringDictionary.MAKES
+        int modelCode; // StringDictionary.MODELS
+        int year;
+        volatile VehicleStatus status = VehicleStatus.Available;
+        int seats;       // Car
+        int horsepower;  // SportCar
+        double size;     // PickupTruck cargo size
+        volatile int flags;
+    }
+
+    private static final AtomicReferenceFieldUpdater<Attributes, VehicleStatus> STATUS =
+            AtomicReferenceFieldUpdater.newUpdater(Attributes.class, VehicleStatus.class, "status");
 }
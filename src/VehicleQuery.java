@@ -0,0 +1,74 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+// Conjunctive filter for VehicleSearchIndex. Unset fields do not constrain
+// the result; ranges are inclusive. Subtype filters (seats, accessible,
+// cargo, trailer) only match vehicles of the subtype that has the field.
+public class VehicleQuery {
+    private String type;
+    private String make;
+    private String model;
+    private Integer minYear;
+    private Integer maxYear;
+    private Integer minSeats;
+    private Integer maxSeats;
+    private Boolean accessible;
+    private Double minCargo;
+    private Double maxCargo;
+    private Boolean trailer;
+    private Set<Vehicle.VehicleStatus> statuses;
+
+    public String getType() { return type; }
+    public String getMake() { return make; }
+    public String getModel() { return model; }
+    public Integer getMinYear() { return minYear; }
+    public Integer getMaxYear() { return maxYear; }
+    public Integer getMinSeats() { return minSeats; }
+    public Integer getMaxSeats() { return maxSeats; }
+    public Boolean getAccessible() { return accessible; }
+    public Double getMinCargo() { return minCargo; }
+    public Double getMaxCargo() { return maxCargo; }
+    public Boolean getTrailer() { return trailer; }
+    public Set<Vehicle.VehicleStatus> getStatuses() { return statuses; }
+
+    // Class name such as "Car"; subclasses match too (a SportCar is a Car).
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public void setMake(String make) {
+        this.make = make;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public void setYearRange(Integer minYear, Integer maxYear) {
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+    }
+
+    public void setSeatRange(Integer minSeats, Integer maxSeats) {
+        this.minSeats = minSeats;
+        this.maxSeats = maxSeats;
+    }
+
+    public void setAccessible(Boolean accessible) {
+        this.accessible = accessible;
+    }
+
+    public void setCargoRange(Double minCargo, Double maxCargo) {
+        this.minCargo = minCargo;
+        this.maxCargo = maxCargo;
+    }
+
+    public void setTrailer(Boolean trailer) {
+        this.trailer = trailer;
+    }
+
+    // Matches vehicles in any of the given statuses.
+    public void setStatuses(Vehicle.VehicleStatus first, Vehicle.VehicleStatus... rest) {
+        this.statuses = EnumSet.of(first, rest);
+    }
+}
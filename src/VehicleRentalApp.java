@@ -1,5 +1,6 @@
 import java.util.Scanner;
 import java.time.LocalDate;
+import java.nio.file.Paths;
 
 public class VehicleRentalApp {
     public static void main(String[] args) {
@@ -13,6 +14,7 @@ public class VehicleRentalApp {
                                "4: Return Vehicle\n" +
                                "5: Display Available Vehicles\n" +
                                "6: Show Rental History\n" +
+                               "7: Export Rental History\n" +
                                "0: Exit\n");
 
             int choice = scanner.nextInt();
@@ -172,6 +174,22 @@ public class VehicleRentalApp {
                     rentalSystem.displayRentalHistory();
                     break;
 
+                //EXPORT RENTAL HISTORY
+
+                case 7:
+                    System.out.print("Enter file name: ");
+                    String exportFile = scanner.nextLine().trim();
+
+                    System.out.print("Enter format (CSV or JSON): ");
+                    ExportFormat format = ExportFormat.parse(scanner.nextLine());
+                    if (format == null) {
+                        System.out.println("Unknown export format.");
+                        break;
+                    }
+
+                    rentalSystem.exportRentalHistory(Paths.get(exportFile), format, null);
+                    break;
+
                 case 0:
                     scanner.close();
                     System.exit(0);
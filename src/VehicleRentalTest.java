@@ -1,5 +1,7 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
@@ -86,4 +88,33 @@ public class VehicleRentalTest {
         assertSame(instance, instance2, "getInstance() should return the same Singleton instance");
     }
 
+    @Test
+    public void testReservationNeedsRegisteredVehicleAndCustomer(@TempDir Path dataDir) {
+
+        RentalConfig config = new RentalConfig();
+        config.setDataDir(dataDir);
+        config.setMetrics(false);
+
+        try (RentalSystem system = new RentalSystem(config)) {
+            Vehicle car = new Car("Toyota", "Corolla", 2020, 5);
+            car.setLicensePlate("RSV001");
+            Customer customer = new Customer(3, "Reserving Customer");
+            LocalDate today = LocalDate.now();
+
+            assertNull(system.reserveVehicle(car, customer, today, today.plusDays(2)));
+            assertTrue(system.addVehicle(car));
+            assertNull(system.reserveVehicle(car, customer, today, today.plusDays(2)));
+            assertEquals(Vehicle.VehicleStatus.Available, car.getStatus());
+
+            // a different object with a registered plate is not the fleet's vehicle
+            Vehicle copy = new Car("Toyota", "Corolla", 2020, 5);
+            copy.setLicensePlate("RSV001");
+            assertTrue(system.addCustomer(customer));
+            assertNull(system.reserveVehicle(copy, customer, today, today.plusDays(2)));
+
+            assertNotNull(system.reserveVehicle(car, customer, today, today.plusDays(2)));
+            assertEquals(Vehicle.VehicleStatus.Held, car.getStatus());
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,308 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Bitmap indexes over the fleet for VehicleQuery searches. Each vehicle gets
+// a slot (a bit position) when it is added; every attribute value, or range
+// bin for numeric fields, has a BitSet of the slots that have it. A query ANDs
+// one bitmap per constraint, ORing bins or statuses within a constraint, so
+// its cost depends on fleet size / 64 words and the number of matches, never
+// on casting or comparing vehicle objects.
+//
+// Slots are not reused; a removed vehicle is cleared from the live bitmap.
+//
+// Only adds and removes take the index lock. Status bitmaps change on every
+// rent and return, so they are AtomicBitSets updated without it: a vehicle's
+// status bits are settled under one of a set of striped locks, and searches
+// read them as they are. The accessible and trailer flags can also change
+// after a vehicle is added and are kept the same way.
+public class VehicleSearchIndex implements Vehicle.StatusListener {
+    // Width of a cargo size bin; queries check exact sizes only in the edge bins.
+    private static final double CARGO_BIN = 100;
+    private static final Vehicle.VehicleStatus[] STATUSES = Vehicle.VehicleStatus.values();
+    // Slots in the first window a page evaluates; each further window is twice as wide.
+    private static final int PAGE_WINDOW = 4096;
+
+    private volatile Vehicle[] slots = new Vehicle[64];
+    private int slotCount;
+    private final ConcurrentIntObjectMap<int[]> slotByPlate = new ConcurrentIntObjectMap<>();
+    private final Object[] slotLocks = new Object[64];
+
+    private final BitSet live = new BitSet();
+    private final Map<String, BitSet> byType = new HashMap<>();
+    private final IntObjectMap<BitSet> byMake = new IntObjectMap<>();  // by dictionary code
+    private final IntObjectMap<BitSet> byModel = new IntObjectMap<>();
+    private final NavigableMap<Integer, BitSet> byYear = new TreeMap<>();
+    private final NavigableMap<Integer, BitSet> bySeats = new TreeMap<>();
+    private final NavigableMap<Integer, BitSet> byCargoBin = new TreeMap<>();
+    private final AtomicBitSet accessible = new AtomicBitSet();
+    private final AtomicBitSet trailer = new AtomicBitSet();
+    private final Map<Vehicle.VehicleStatus, AtomicBitSet> byStatus = new EnumMap<>(Vehicle.VehicleStatus.class);
+
+    // Guards slots and every bitmap except byStatus, accessible and trailer.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public VehicleSearchIndex() {
+        for (Vehicle.VehicleStatus status : STATUSES)
+            byStatus.put(status, new AtomicBitSet());
+        for (int i = 0; i < slotLocks.length; i++)
+            slotLocks[i] = new Object();
+    }
+
+    public void add(Vehicle vehicle) {
+        lock.writeLock().lock();
+        try {
+            if (slotByPlate.get(vehicle.getPackedPlate()) != null) return;
+
+            int slot = slotCount++;
+            if (slot == slots.length) slots = Arrays.copyOf(slots, slot << 1);
+            slots[slot] = vehicle;
+            live.set(slot);
+
+            // a SportCar is also indexed as a Car
+            for (Class<?> c = vehicle.getClass(); c != Vehicle.class && c != null; c = c.getSuperclass())
+                bits(byType, key(c.getSimpleName())).set(slot);
+            bits(byMake, vehicle.getMakeCode()).set(slot);
+            bits(byModel, vehicle.getModelCode()).set(slot);
+            bits(byYear, vehicle.getYear()).set(slot);
+
+            if (vehicle instanceof Car) {
+                bits(bySeats, ((Car) vehicle).getNumSeats()).set(slot);
+            }
+            if (vehicle instanceof PickupTruck) {
+                bits(byCargoBin, cargoBin(((PickupTruck) vehicle).getCargoSize())).set(slot);
+            }
+
+            // publish the slot before reading the status and flags, so a change racing with this add is settled by one of them
+            slotByPlate.put(vehicle.getPackedPlate(), new int[] {slot});
+            settle(slot, vehicle);
+            settleFlags(slot, vehicle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Vehicle vehicle) {
+        lock.writeLock().lock();
+        try {
+            int[] slot = slotByPlate.remove(vehicle.getPackedPlate());
+            if (slot == null) return;
+            live.clear(slot[0]);
+            synchronized (slotLock(slot[0])) {
+                slots[slot[0]] = null;
+                for (Vehicle.VehicleStatus status : STATUSES) byStatus.get(status).clear(slot[0]);
+                accessible.clear(slot[0]);
+                trailer.clear(slot[0]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void statusChanged(Vehicle vehicle) {
+        int[] slot = slotByPlate.get(vehicle.getPackedPlate());
+        if (slot != null) settle(slot[0], vehicle);
+    }
+
+    // Sets the bit of the vehicle's current status and clears the others. The
+    // status is re-read under the slot's lock, so racing notifications settle
+    // on the latest one.
+    private void settle(int slot, Vehicle vehicle) {
+        synchronized (slotLock(slot)) {
+            if (slots[slot] != vehicle) return;
+            Vehicle.VehicleStatus current = vehicle.getStatus();
+            for (Vehicle.VehicleStatus status : STATUSES) {
+                if (status == current) byStatus.get(status).set(slot);
+                else byStatus.get(status).clear(slot);
+            }
+        }
+    }
+
+    @Override
+    public void flagsChanged(Vehicle vehicle) {
+        int[] slot = slotByPlate.get(vehicle.getPackedPlate());
+        if (slot != null) settleFlags(slot[0], vehicle);
+    }
+
+    // Like settle, for the flags searches can filter on.
+    private void settleFlags(int slot, Vehicle vehicle) {
+        synchronized (slotLock(slot)) {
+            if (slots[slot] != vehicle) return;
+            if (vehicle instanceof Minibus && ((Minibus) vehicle).isAccessible()) accessible.set(slot);
+            else accessible.clear(slot);
+            if (vehicle instanceof PickupTruck && ((PickupTruck) vehicle).hasTrailer()) trailer.set(slot);
+            else trailer.clear(slot);
+        }
+    }
+
+    private Object slotLock(int slot) {
+        return slotLocks[slot & (slotLocks.length - 1)];
+    }
+
+    // Vehicles matching every constraint of the query, in the order they were added.
+    public List<Vehicle> search(VehicleQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet result = matching(query, 0, slotCount);
+            List<Vehicle> matches = new ArrayList<>(result.cardinality());
+            for (int slot = result.nextSetBit(0); slot >= 0; slot = result.nextSetBit(slot + 1))
+                matches.add(slots[slot]);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Cursor over the vehicles matching the query (null for all), in the order
+    // they were added: adds up to limit of them from slot from on to out, and
+    // returns the slot the next call should start at, or -1 if no match is left.
+    // Slots are never reused, so a slot stays a valid position while the fleet changes.
+    // The query is evaluated over growing windows of slots starting at from,
+    // so a page only costs the slots it scans, not the whole fleet.
+    public int page(VehicleQuery query, int from, int limit, List<Vehicle> out) {
+        lock.readLock().lock();
+        try {
+            if (query == null) {
+                int slot = live.nextSetBit(from);
+                for (int n = 0; n < limit && slot >= 0; n++) {
+                    out.add(slots[slot]);
+                    slot = live.nextSetBit(slot + 1);
+                }
+                return slot;
+            }
+
+            int n = 0;
+            long window = PAGE_WINDOW;
+            for (int lo = from; lo < slotCount; window <<= 1) {
+                int hi = (int) Math.min(slotCount, lo + window);
+                BitSet result = matching(query, lo, hi);
+                for (int bit = result.nextSetBit(0); bit >= 0; bit = result.nextSetBit(bit + 1)) {
+                    if (n++ == limit) return lo + bit;
+                    out.add(slots[lo + bit]);
+                }
+                lo = hi;
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read lock. The matches among slots [lo, hi), as bits
+    // relative to lo; every bitmap is only read over that range.
+    private BitSet matching(VehicleQuery query, int lo, int hi) {
+        BitSet result = live.get(lo, hi);
+
+        if (query.getType() != null) and(result, slice(byType.get(key(query.getType())), lo, hi));
+        if (query.getMake() != null)
+            and(result, slice(byCode(byMake, StringDictionary.MAKES.find(query.getMake())), lo, hi));
+        if (query.getModel() != null)
+            and(result, slice(byCode(byModel, StringDictionary.MODELS.find(query.getModel())), lo, hi));
+
+        if (query.getMinYear() != null || query.getMaxYear() != null)
+            result.and(union(range(byYear, query.getMinYear(), query.getMaxYear()), lo, hi));
+        if (query.getMinSeats() != null || query.getMaxSeats() != null)
+            result.and(union(range(bySeats, query.getMinSeats(), query.getMaxSeats()), lo, hi));
+
+        if (query.getAccessible() != null)
+            flag(result, slice(byType.get(key("Minibus")), lo, hi), accessible.get(lo, hi), query.getAccessible());
+        if (query.getTrailer() != null)
+            flag(result, slice(byType.get(key("PickupTruck")), lo, hi), trailer.get(lo, hi), query.getTrailer());
+
+        if (query.getMinCargo() != null || query.getMaxCargo() != null)
+            cargo(result, query.getMinCargo(), query.getMaxCargo(), lo, hi);
+
+        if (query.getStatuses() != null) {
+            BitSet any = new BitSet();
+            for (Vehicle.VehicleStatus status : query.getStatuses()) any.or(byStatus.get(status).get(lo, hi));
+            result.and(any);
+        }
+
+        return result;
+    }
+
+    // Cargo bins fully inside the range match as a whole; vehicles in the two
+    // edge bins are checked against their exact cargo size.
+    private void cargo(BitSet result, Double min, Double max, int lo, int hi) {
+        Integer fromBin = min == null ? null : cargoBin(min);
+        Integer toBin = max == null ? null : cargoBin(max);
+        result.and(union(range(byCargoBin, fromBin, toBin), lo, hi));
+
+        BitSet edges = new BitSet();
+        if (fromBin != null) edges.or(bitsOrEmpty(slice(byCargoBin.get(fromBin), lo, hi)));
+        if (toBin != null) edges.or(bitsOrEmpty(slice(byCargoBin.get(toBin), lo, hi)));
+        edges.and(result);
+        for (int bit = edges.nextSetBit(0); bit >= 0; bit = edges.nextSetBit(bit + 1)) {
+            double size = ((PickupTruck) slots[lo + bit]).getCargoSize();
+            if ((min != null && size < min) || (max != null && size > max)) result.clear(bit);
+        }
+    }
+
+    private static void and(BitSet result, BitSet bits) {
+        if (bits == null) result.clear();
+        else result.and(bits);
+    }
+
+    // Keeps subtype vehicles whose flag is set (wanted) or clear (!wanted).
+    private static void flag(BitSet result, BitSet subtype, BitSet flagged, boolean wanted) {
+        and(result, subtype);
+        if (wanted) result.and(flagged);
+        else result.andNot(flagged);
+    }
+
+    private static Map<Integer, BitSet> range(NavigableMap<Integer, BitSet> bins, Integer min, Integer max) {
+        if (min != null && max != null) {
+            if (min > max) return new TreeMap<>();
+            return bins.subMap(min, true, max, true);
+        }
+        if (min != null) return bins.tailMap(min, true);
+        return bins.headMap(max, true);
+    }
+
+    private static BitSet union(Map<Integer, BitSet> bins, int lo, int hi) {
+        BitSet union = new BitSet();
+        for (BitSet bits : bins.values()) union.or(bits.get(lo, hi));
+        return union;
+    }
+
+    private static BitSet slice(BitSet bits, int lo, int hi) {
+        return bits == null ? null : bits.get(lo, hi);
+    }
+
+    private static BitSet bitsOrEmpty(BitSet bits) {
+        return bits == null ? new BitSet() : bits;
+    }
+
+    private static <K> BitSet bits(Map<K, BitSet> index, K key) {
+        return index.computeIfAbsent(key, k -> new BitSet());
+    }
+
+    // A value missing from the dictionary (code -1) matches nothing.
+    private static BitSet byCode(IntObjectMap<BitSet> index, int code) {
+        return code < 0 ? null : index.get(code);
+    }
+
+    private static BitSet bits(IntObjectMap<BitSet> index, int key) {
+        BitSet bits = index.get(key);
+        if (bits == null) index.put(key, bits = new BitSet());
+        return bits;
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static int cargoBin(double size) {
+        return (int) Math.floor(size / CARGO_BIN);
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Append-only log on a long-lived FileChannel with group commit.
+// Threads append into a shared buffer; whichever thread finds no flush in
+// progress writes (and, if the policy asks for it, fsyncs) everything pending
+// in one go, and every writer covered by that batch is released together.
+// A batch that fails to write is cut back off the file and its writers get
+// the error; the log carries on with the next batch.
+public class WriteAheadLog implements Closeable {
+
+    public enum Durability {
+        FSYNC_EACH,      // a write returns once its bytes have been forced to disk
+        FSYNC_INTERVAL,  // a write returns once handed to the OS; a timer forces every N ms
+        OS_BUFFERED      // a write returns once handed to the OS; never forced explicitly
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final Object lock = new Object();
+    private final Thread syncer;
+
+    private ByteBuffer pending = ByteBuffer.allocate(8192);
+    private ByteBuffer spare = ByteBuffer.allocate(8192);
+    private long appendedSeq;   // last sequence handed out by append()
+    private long writtenSeq;    // last sequence written to the channel
+    private long syncedSeq;     // last sequence forced to disk
+    private long writtenBytes;  // size of the file after the last write
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;  // set once the file can no longer be trusted
+
+    // Sequence ranges (first -> last) of batches that failed to write, for
+    // writers that have not collected their error yet. Failures are rare;
+    // the oldest are dropped beyond MAX_FAILED_BATCHES.
+    private static final int MAX_FAILED_BATCHES = 1024;
+    private final TreeMap<Long, Long> failedBatches = new TreeMap<>();
+    private final Map<Long, IOException> batchErrors = new HashMap<>();
+
+    public WriteAheadLog(Path path, Durability durability, long syncIntervalMs) throws IOException {
+        this.path = path;
+        this.durability = durability;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writtenBytes = channel.size();
+
+        if (durability == Durability.FSYNC_INTERVAL) {
+            syncer = new Thread(() -> syncLoop(syncIntervalMs), "wal-sync-" + path.getFileName());
+            syncer.setDaemon(true);
+            syncer.start();
+        } else {
+            syncer = null;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Writes one line and returns once it is durable under the configured policy.
+    public void write(String line) throws IOException {
+        await(append(line));
+    }
+
+    public void write(byte[] entry) throws IOException {
+        await(append(entry));
+    }
+
+    // Buffers one line without waiting; pass the result to await().
+    public long append(String line) throws IOException {
+        return append((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Buffers raw bytes without waiting; pass the result to await().
+    public long append(byte[] bytes) throws IOException {
+        synchronized (lock) {
+            checkUsable();
+            if (pending.remaining() < bytes.length) {
+                pending = grow(pending, bytes.length);
+            }
+            pending.put(bytes);
+            return ++appendedSeq;
+        }
+    }
+
+    public void await(long seq) throws IOException {
+        flush(seq);
+        synchronized (lock) {
+            checkBatch(seq);
+        }
+    }
+
+    // Returns once the batch holding seq has been written (and forced, under
+    // FSYNC_EACH) or has failed; becomes the leader if no flush is running.
+    private void flush(long seq) throws IOException {
+        ByteBuffer batch;
+        long batchSeq;
+        long goodBytes;
+
+        // an interrupt during channel I/O would close the channel for every
+        // writer, so it is held back until this flush is over
+        boolean interrupted = Thread.interrupted();
+        try {
+            synchronized (lock) {
+                while (true) {
+                    if (failure != null) throw new IOException("Write-ahead log " + path + " has failed", failure);
+                    if (isDone(seq)) return;
+                    if (!flushing) break;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // the entry may already be in a batch; finish waiting for it
+                    }
+                }
+                // become the leader for everything appended so far
+                flushing = true;
+                batch = pending;
+                batchSeq = appendedSeq;
+                goodBytes = writtenBytes;
+                pending = spare;
+                pending.clear();
+                spare = null;
+            }
+            writeBatch(batch, batchSeq, goodBytes);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatch(ByteBuffer batch, long batchSeq, long goodBytes) {
+        IOException error = null;
+        IOException broken = null;
+        batch.flip();
+        int batchBytes = batch.remaining();
+        try {
+            while (batch.hasRemaining()) channel.write(batch);
+            if (durability == Durability.FSYNC_EACH) channel.force(false);
+        } catch (IOException e) {
+            error = e;
+            // cut the torn batch off so the file ends on the last good entry
+            try {
+                channel.truncate(goodBytes);
+            } catch (IOException e2) {
+                e2.addSuppressed(e);
+                broken = e2;
+            }
+        }
+
+        synchronized (lock) {
+            batch.clear();
+            spare = batch;
+            flushing = false;
+            if (error == null) {
+                writtenBytes += batchBytes;
+            } else {
+                if (broken != null) failure = broken;
+                failedBatches.put(writtenSeq + 1, batchSeq);
+                batchErrors.put(writtenSeq + 1, error);
+                if (failedBatches.size() > MAX_FAILED_BATCHES)
+                    batchErrors.remove(failedBatches.pollFirstEntry().getKey());
+            }
+            // a failed batch is settled too, so nothing after it waits on it
+            writtenSeq = batchSeq;
+            if (durability == Durability.FSYNC_EACH) syncedSeq = batchSeq;
+            lock.notifyAll();
+        }
+    }
+
+    // Bytes in the file, including everything already written by a completed await().
+    public long size() {
+        synchronized (lock) {
+            return writtenBytes;
+        }
+    }
+
+    // Forces everything written so far to disk, regardless of policy.
+    public void sync() throws IOException {
+        long target;
+        synchronized (lock) {
+            target = appendedSeq;
+        }
+        flush(target);
+        synchronized (lock) {
+            if (syncedSeq >= target) return;
+        }
+        channel.force(false);
+        synchronized (lock) {
+            if (syncedSeq < target) syncedSeq = target;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+        }
+        try {
+            if (failure == null) sync();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            if (syncer != null) syncer.interrupt();
+            channel.close();
+        }
+    }
+
+    private boolean isDone(long seq) {
+        return durability == Durability.FSYNC_EACH ? syncedSeq >= seq : writtenSeq >= seq;
+    }
+
+    // Throws the error of the batch holding seq, if that batch failed.
+    private void checkBatch(long seq) throws IOException {
+        Map.Entry<Long, Long> batch = failedBatches.floorEntry(seq);
+        if (batch != null && batch.getValue() >= seq) throw batchErrors.get(batch.getKey());
+    }
+
+    private void syncLoop(long intervalMs) {
+        while (true) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long target;
+            synchronized (lock) {
+                if (closed) return;
+                if (syncedSeq >= writtenSeq) continue;
+                target = writtenSeq;
+            }
+            try {
+                channel.force(false);
+                synchronized (lock) {
+                    if (syncedSeq < target) syncedSeq = target;
+                }
+            } catch (IOException e) {
+                // writers were released already; try again at the next tick
+                System.out.println("Error syncing " + path.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        if (closed) throw new IOException("Write-ahead log " + path + " is closed");
+        if (failure != null) throw new IOException("Write-ahead log " + path + " has failed", failure);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}